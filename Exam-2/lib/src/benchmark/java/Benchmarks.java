@@ -0,0 +1,67 @@
+import java.util.*;
+
+/**
+ * Entry point of the benchmark source set, run with {@code gradle benchmark}.
+ * <p>
+ * Arguments name the suites to run ({@code map}, {@code gala},
+ * {@code concurrent}, {@code stack}, {@code carride}); none runs them all.
+ * Sizes and timings come from system properties, which the Gradle task
+ * forwards from {@code -P} project properties:
+ * <ul>
+ * <li>{@code bench.cities} city counts for the map suite, default
+ * {@code 1000,100000,1000000}, up to {@code 10000000}</li>
+ * <li>{@code bench.guests} guest counts for the gala suite, default
+ * {@code 1000,100000,1000000}</li>
+ * <li>{@code bench.threads} thread counts for the concurrent and stack
+ * suites, default {@code 1,2,4,...} up to twice the number of cores for the
+ * former and up to {@code 64} for the latter</li>
+ * <li>{@code bench.warmups}, {@code bench.iterations} and
+ * {@code bench.millis} for the measurement loop</li>
+ * </ul>
+ */
+public final class Benchmarks {
+	private Benchmarks() {
+	}
+
+	public static void main(String[] args) {
+		Set<String> suites = new HashSet<>(Arrays.asList(args));
+		Harness h = new Harness(
+				Integer.getInteger("bench.warmups", 3),
+				Integer.getInteger("bench.iterations", 5),
+				Long.getLong("bench.millis", 500L));
+		Harness.header();
+		if (suites.isEmpty() || suites.contains("map")) {
+			MapBenchmarks.run(h, sizes("bench.cities"));
+		}
+		if (suites.isEmpty() || suites.contains("gala")) {
+			GalaBenchmarks.run(h, sizes("bench.guests"));
+		}
+		if (suites.isEmpty() || suites.contains("concurrent")) {
+			ConcurrentGalaBenchmarks.run(h, threads(2 * Runtime.getRuntime().availableProcessors()));
+		}
+		if (suites.isEmpty() || suites.contains("stack")) {
+			StackBenchmarks.run(h, threads(64));
+		}
+		if (suites.isEmpty() || suites.contains("carride")) {
+			CarRideBenchmarks.run(h);
+		}
+		System.out.println("sink " + h.sink());
+	}
+
+	private static int[] threads(int max) {
+		String value = System.getProperty("bench.threads");
+		if (value != null) {
+			return Arrays.stream(value.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+		}
+		List<Integer> threads = new ArrayList<>();
+		for (int n = 1; n <= max; n *= 2) {
+			threads.add(n);
+		}
+		return threads.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static int[] sizes(String property) {
+		String value = System.getProperty(property, "1000,100000,1000000");
+		return Arrays.stream(value.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+	}
+}
@@ -0,0 +1,150 @@
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Cost of building one {@link CarRide} through a fresh builder, and of
+ * building a batch of them from columns through {@link CarRideBatch}, and
+ * of keeping a {@link RideIndex} of a million rides, and of cheapest paths
+ * through a {@link RideGraph} of a million rides, and of joining a million
+ * rides to the large cities of a state through {@link Locations}, with and
+ * without endpoint ids, and of streaming rides into a sliding
+ * {@link RateAggregator}.
+ */
+final class CarRideBenchmarks {
+	private CarRideBenchmarks() {
+	}
+
+	static void run(Harness h) {
+		String[] places = { "hampton", "norfolk", "suffolk", "chesapeake", "poquoson", "williamsburg" };
+		int[] next = { 0 };
+		h.run("carride.builder.build", 1, () -> {
+			int i = next[0]++;
+			CarRide ride = new CarRide.Builder()
+					.from(places[i % places.length])
+					.to(places[(i + 1) % places.length])
+					.rate(i & 0xff)
+					.build();
+			return ride.hashCode();
+		});
+		int rows = 1 << 16;
+		String[] from = new String[rows];
+		String[] to = new String[rows];
+		int[] rate = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			// fresh strings, as a parser would hand them over
+			from[i] = new String(places[i % places.length]);
+			to[i] = new String(places[(i + 1) % places.length]);
+			rate[i] = i % 64 == 0 ? -1 : i & 0xff;
+		}
+		CarRideBatch batch = new CarRideBatch();
+		h.run("carride.batch.build", rows, () -> {
+			CarRideBatch.Result r = batch.build(from, to, rate);
+			return r.getAccepted() + r.getRejected();
+		});
+
+		// a million rides over a thousand routes, replaced one at a time
+		int n = 1 << 20;
+		CarRide[] rides = new CarRide[n];
+		RideIndex index = new RideIndex();
+		Random random = new Random(42);
+		for (int i = 0; i < n; i++) {
+			rides[i] = ride(random);
+			index.add(rides[i]);
+		}
+		h.run("carride.index.remove+add", n, () -> {
+			int i = random.nextInt(n);
+			index.remove(rides[i]);
+			rides[i] = ride(random);
+			index.add(rides[i]);
+			return index.size();
+		});
+		h.run("carride.index.cheapest(10)", n, () -> {
+			CarRide r = rides[random.nextInt(n)];
+			return index.cheapest(r.getFrom(), r.getTo(), 10).size();
+		});
+		h.run("carride.index.range(+-5)", n, () -> {
+			CarRide r = rides[random.nextInt(n)];
+			return index.range(r.getFrom(), r.getTo(), r.getRate() - 5, r.getRate() + 5).size();
+		});
+		graph(h);
+		locations(h);
+		rates(h, rides);
+	}
+
+	private static void graph(Harness h) {
+		// a million rides between a hundred thousand places, mostly to near ones
+		int n = 100_000;
+		String[] places = new String[n];
+		for (int i = 0; i < n; i++) {
+			places[i] = "place" + i;
+		}
+		RideGraph graph = new RideGraph();
+		Random random = new Random(42);
+		for (int i = 0; i < 1 << 20; i++) {
+			int from = random.nextInt(n);
+			int to = random.nextInt(20) == 0 ? random.nextInt(n) : (from + 1 + random.nextInt(50)) % n;
+			graph.add(new CarRide.Builder().from(places[from]).to(places[to]).rate(1 + random.nextInt(1000)).build());
+		}
+		h.run("carride.graph.cost", graph.getRideCount(), () -> graph.cost(places[random.nextInt(n)], places[random.nextInt(n)]));
+		h.run("carride.graph.add+cost", graph.getRideCount(), () -> {
+			int from = random.nextInt(n);
+			graph.add(new CarRide.Builder().from(places[from]).to(places[(from + 1) % n]).rate(random.nextInt(1000)).build());
+			return graph.cost(places[random.nextInt(n)], places[random.nextInt(n)]);
+		});
+	}
+
+	private static void locations(Harness h) {
+		// fifty states of a hundred cities each, a fifth of them large
+		Map map = new Map();
+		int states = 50;
+		int cities = 100;
+		for (int s = 0; s < states; s++) {
+			State state = new State("state" + s);
+			for (int c = 0; c < cities; c++) {
+				String name = "city" + (s * cities + c);
+				state.addCities(c % 5 == 0 ? new LargeCity(name, 500_000) : new SmallCity(name, 10_000));
+			}
+			map.addRegions(state);
+		}
+		Locations locations = new Locations();
+		locations.add(map);
+		int n = 1 << 20;
+		String[] from = new String[n];
+		String[] to = new String[n];
+		int[] rate = new int[n];
+		Random random = new Random(42);
+		for (int i = 0; i < n; i++) {
+			from[i] = "city" + random.nextInt(states * cities);
+			to[i] = "city" + random.nextInt(states * cities);
+			rate[i] = random.nextInt(1000);
+		}
+		List<CarRide> linked = new CarRideBatch(locations.getNames()).build(from, to, rate).getRides();
+		List<CarRide> loose = new CarRideBatch().build(from, to, rate).getRides();
+		BitSet large = locations.getLargeCities("state7");
+		h.run("carride.locations.departing(ids)", n, () -> locations.departing(linked, large).size());
+		h.run("carride.locations.departing(names)", n, () -> locations.departing(loose, large).size());
+	}
+
+	private static void rates(Harness h, CarRide[] rides) {
+		// a minute long window sliding by six seconds, a hundred rides a millisecond
+		RateAggregator rates = RateAggregator.sliding(60_000, 6_000);
+		long[] next = { 0 };
+		h.run("carride.rates.add", rides.length, () -> {
+			long i = next[0]++;
+			rates.add(rides[(int) (i % rides.length)], i / 100);
+			return i;
+		});
+		CarRide r = rides[0];
+		h.run("carride.rates.window.p99", rides.length, () -> rates.getWindow(r.getFrom(), r.getTo()).getPercentile(99));
+	}
+
+	private static CarRide ride(Random random) {
+		return new CarRide.Builder()
+				.from("place" + random.nextInt(40))
+				.to("place" + random.nextInt(25))
+				.rate(random.nextInt(10_000))
+				.build();
+	}
+}
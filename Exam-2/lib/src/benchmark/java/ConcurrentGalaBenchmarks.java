@@ -0,0 +1,49 @@
+import java.util.SplittableRandom;
+
+/**
+ * RSVP throughput from a growing number of threads, through
+ * {@link ConcurrentGala} and through a plain {@link Gala} behind one lock,
+ * the way callers had to share a gala before. The concurrent numbers should
+ * grow with the threads up to the number of cores.
+ */
+final class ConcurrentGalaBenchmarks {
+	private static final int GUESTS = 100_000;
+
+	private ConcurrentGalaBenchmarks() {
+	}
+
+	static void run(Harness h, int[] threads) {
+		Guest[] guests = new Guest[GUESTS];
+		for (int i = 0; i < GUESTS; i++) {
+			guests[i] = new Guest("guest " + i);
+		}
+		for (int n : threads) {
+			ConcurrentGala concurrent = new ConcurrentGala(new HistoryPolicy.Builder().maxDepth(1 << 16).build());
+			for (Guest g : guests) {
+				concurrent.execute(concurrent.new Add(g));
+			}
+			h.runThreads("concurrent.rsvp", n, t -> {
+				SplittableRandom random = new SplittableRandom(t);
+				return () -> {
+					Guest g = guests[random.nextInt(GUESTS)];
+					concurrent.execute(concurrent.new RSVP(g, random.nextBoolean()));
+					return 1;
+				};
+			});
+			Gala locked = new Gala(new HistoryPolicy.Builder().maxDepth(1 << 16).build());
+			for (Guest g : guests) {
+				locked.execute(locked.new Add(g));
+			}
+			h.runThreads("locked.rsvp", n, t -> {
+				SplittableRandom random = new SplittableRandom(t);
+				return () -> {
+					Guest g = guests[random.nextInt(GUESTS)];
+					synchronized (locked) {
+						locked.execute(locked.new RSVP(g, random.nextBoolean()));
+					}
+					return 1;
+				};
+			});
+		}
+	}
+}
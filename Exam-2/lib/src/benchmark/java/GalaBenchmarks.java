@@ -0,0 +1,78 @@
+
+/**
+ * Per-command cost of {@link Gala} at growing guest list sizes; the numbers
+ * should stay flat as the list grows. Each body leaves the gala as it found
+ * it so the history does not grow during a run.
+ */
+final class GalaBenchmarks {
+	private GalaBenchmarks() {
+	}
+
+	static void run(Harness h, int[] sizes) {
+		for (int size : sizes) {
+			Gala gala = new Gala();
+			Guest[] guests = new Guest[size];
+			for (int i = 0; i < size; i++) {
+				guests[i] = new Guest("guest " + i);
+				gala.execute(gala.new Add(guests[i]));
+			}
+			Guest extra = new Guest("one more guest");
+			int[] next = { 0 };
+			h.run("gala.execute.add+undo", size, () -> {
+				gala.execute(gala.new Add(extra));
+				gala.undo();
+				return gala.undoSize();
+			});
+			h.run("gala.execute.delete+undo", size, () -> {
+				Guest g = guests[next[0]++ % size];
+				gala.execute(gala.new Delete(g));
+				gala.undo();
+				return gala.undoSize();
+			});
+			h.run("gala.execute.rsvp+undo", size, () -> {
+				Guest g = guests[next[0]++ % size];
+				gala.execute(gala.new RSVP(g, true));
+				gala.undo();
+				return gala.undoSize();
+			});
+			gala.execute(gala.new RSVP(guests[0], true));
+			h.run("gala.undo+redo", size, () -> {
+				gala.undo();
+				gala.redo();
+				return gala.redoSize();
+			});
+			Guest[] imported = new Guest[1000];
+			for (int i = 0; i < imported.length; i++) {
+				imported[i] = new Guest("imported guest " + i);
+			}
+			h.run("gala.import1000.single+undo", size, () -> {
+				for (Guest g : imported) {
+					gala.execute(gala.new Add(g));
+				}
+				for (int i = 0; i < imported.length; i++) {
+					gala.undo();
+				}
+				return gala.undoSize();
+			});
+			h.run("gala.import1000.batch+undo", size, () -> {
+				Gala.Batch batch = gala.new Batch();
+				for (Guest g : imported) {
+					batch.add(g);
+				}
+				gala.execute(batch);
+				gala.undo();
+				return gala.undoSize();
+			});
+			h.run("gala.hasGuest", size, () -> gala.hasGuest(guests[next[0]++ % size]) ? 1 : 0);
+			h.run("gala.rsvpCount", size, () -> gala.rsvpCount());
+			h.run("gala.getRSVP", size, () -> gala.getRSVP().size());
+			h.run("gala.rsvp+getGuests+undo", size, () -> {
+				Guest g = guests[next[0]++ % size];
+				gala.execute(gala.new RSVP(g, true));
+				int n = gala.getGuests().size();
+				gala.undo();
+				return n;
+			});
+		}
+	}
+}
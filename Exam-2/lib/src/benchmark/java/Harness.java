@@ -0,0 +1,138 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CyclicBarrier;
+import java.util.function.IntFunction;
+
+/**
+ * Minimal measurement loop: a benchmark body is run for a few warmup
+ * iterations, then for timed iterations whose throughput and allocation
+ * rate (from the thread's allocated byte counter) are averaged and printed.
+ * The values returned by the body are summed into a sink so the work
+ * cannot be optimized away.
+ */
+final class Harness {
+	interface Body {
+		long run();
+	}
+
+	private final int warmups;
+	private final int iterations;
+	private final long iterationNanos;
+	private final com.sun.management.ThreadMXBean threads;
+	private long sink;
+
+	Harness(int warmups, int iterations, long iterationMillis) {
+		this.warmups = warmups;
+		this.iterations = iterations;
+		this.iterationNanos = iterationMillis * 1_000_000;
+		this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		this.sink = 0;
+	}
+
+	static void header() {
+		System.out.printf("%-34s %12s %16s %14s %12s%n", "benchmark", "size", "ops/s", "ns/op", "B/op");
+	}
+
+	void run(String name, long size, Body body) {
+		for (int i = 0; i < warmups; i++) {
+			iteration(body);
+		}
+		double ops = 0;
+		double bytes = 0;
+		for (int i = 0; i < iterations; i++) {
+			double[] r = iteration(body);
+			ops += r[0];
+			bytes += r[1];
+		}
+		ops /= iterations;
+		bytes /= iterations;
+		System.out.printf("%-34s %12d %16.1f %14.1f %12.1f%n", name, size, ops, 1e9 / ops, bytes);
+	}
+
+	/**
+	 * Runs the body until the iteration time is used up; returns operations
+	 * per second and bytes allocated per operation.
+	 */
+	private double[] iteration(Body body) {
+		long thread = Thread.currentThread().getId();
+		long count = 0;
+		long bytes = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		long elapsed;
+		do {
+			sink += body.run();
+			count++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < iterationNanos);
+		bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+		return new double[] { count * 1e9 / elapsed, (double) bytes / count };
+	}
+
+	/**
+	 * As {@link #run}, with {@code threads} threads each looping over its own
+	 * body from {@code bodies}, started together; prints their combined
+	 * throughput. Allocation is not measured here.
+	 */
+	void runThreads(String name, int threads, IntFunction<Body> bodies) {
+		Body[] b = new Body[threads];
+		for (int t = 0; t < threads; t++) {
+			b[t] = bodies.apply(t);
+		}
+		for (int i = 0; i < warmups; i++) {
+			iteration(b);
+		}
+		double ops = 0;
+		for (int i = 0; i < iterations; i++) {
+			ops += iteration(b);
+		}
+		ops /= iterations;
+		System.out.printf("%-34s %12d %16.1f %14.1f %12s%n", name, threads, ops, 1e9 / ops, "-");
+	}
+
+	private double iteration(Body[] bodies) {
+		long[] counts = new long[bodies.length];
+		long[] sinks = new long[bodies.length];
+		CyclicBarrier start = new CyclicBarrier(bodies.length + 1);
+		Thread[] threads = new Thread[bodies.length];
+		for (int t = 0; t < bodies.length; t++) {
+			int id = t;
+			threads[t] = new Thread(() -> {
+				try {
+					start.await();
+				}
+				catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+				long deadline = System.nanoTime() + iterationNanos;
+				long count = 0;
+				do {
+					sinks[id] += bodies[id].run();
+					count++;
+				} while (System.nanoTime() < deadline);
+				counts[id] = count;
+			});
+			threads[t].start();
+		}
+		long begin;
+		try {
+			start.await();
+			begin = System.nanoTime();
+			for (Thread t : threads) {
+				t.join();
+			}
+		}
+		catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		long elapsed = System.nanoTime() - begin;
+		long total = 0;
+		for (int t = 0; t < bodies.length; t++) {
+			total += counts[t];
+			sink += sinks[t];
+		}
+		return total * 1e9 / elapsed;
+	}
+
+	long sink() {
+		return sink;
+	}
+}
@@ -0,0 +1,48 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Map traversal and query benchmarks over maps of states holding 100 cities
+ * each, with populations spread evenly over both city kinds.
+ */
+final class MapBenchmarks {
+	private MapBenchmarks() {
+	}
+
+	static void run(Harness h, int[] sizes) {
+		for (int size : sizes) {
+			Map m = build(size);
+			h.run("map.traverse.count", size, () -> {
+				CountRegionVisitor v = new CountRegionVisitor();
+				m.traverse(v);
+				return v.getCities();
+			});
+			h.run("map.traverse.range", size, () -> {
+				PopulationRangeVisitor v = new PopulationRangeVisitor(100_000, 100_999);
+				m.traverse(v);
+				return v.getCityCount();
+			});
+			h.run("map.traverseParallel.count", size, () -> {
+				CountRegionVisitor v = new CountRegionVisitor();
+				m.traverseParallel(v, ForkJoinPool.commonPool());
+				return v.getCities();
+			});
+			h.run("map.getCitiesInRange", size, () -> m.getCitiesInRange(100_000, 100_999).size());
+			h.run("map.count", size, () -> m.count().getCities());
+		}
+	}
+
+	static Map build(int cities) {
+		Map m = new Map();
+		int p = 0;
+		State s = null;
+		for (int i = 0; i < cities; i++) {
+			if (i % 100 == 0) {
+				s = new State("state " + i / 100);
+				m.addRegions(s);
+			}
+			p = (p + 7_919) % 500_000;
+			s.addCities(p > 250_000 ? new LargeCity("city " + i, p) : new SmallCity("city " + i, p));
+		}
+		return m;
+	}
+}
@@ -0,0 +1,33 @@
+/**
+ * Push and pop throughput of one stack shared by a growing number of
+ * threads: {@link ConcurrentStack} against {@link Stack} behind one lock.
+ * Each body pushes and then pops, so the stacks stay small and the numbers
+ * measure contention on the top rather than growth.
+ */
+final class StackBenchmarks {
+	private StackBenchmarks() {
+	}
+
+	static void run(Harness h, int[] threads) {
+		for (int n : threads) {
+			ConcurrentStack<Integer> concurrent = new ConcurrentStack<>();
+			h.runThreads("stack.concurrent.push+pop", n, t -> {
+				Integer value = t;
+				return () -> {
+					concurrent.push(value);
+					return concurrent.pop();
+				};
+			});
+			Stack<Integer> locked = new Stack<>();
+			h.runThreads("stack.locked.push+pop", n, t -> {
+				Integer value = t;
+				return () -> {
+					synchronized (locked) {
+						locked.push(value);
+						return locked.pop();
+					}
+				};
+			});
+		}
+	}
+}
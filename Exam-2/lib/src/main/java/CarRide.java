@@ -2,14 +2,18 @@
 public class CarRide {
 	private String from;
 	private String to;
-	private Integer rate;
+	private int fromId;
+	private int toId;
+	private int rate;
 
 public static class Builder {
 	
 	private String from;
 	private String to;
-	private Integer rate;
+	private int rate;
+	private boolean rated;
 	private boolean Valid=true;
+	private NameDictionary places;
 
 	public Builder from(String s) {
 		if (s == null|| s.isBlank()) {
@@ -37,12 +41,34 @@ public static class Builder {
 		}
 		else {
 			this.rate = i;
+			this.rated = true;
 			return this;
 		}
 	}
 	
+	/**
+	 * Numbers the endpoints of the rides built from now on in
+	 * {@code places}; the rides keep the dictionary's copy of each name.
+	 */
+	Builder places(NameDictionary places) {
+		this.places = places;
+		return this;
+	}
+	
+	/**
+	 * Clears the builder so it can build another ride, as
+	 * {@link CarRideBatch} does for every row; the dictionary is kept.
+	 */
+	Builder reset() {
+		from = null;
+		to = null;
+		rated = false;
+		Valid = true;
+		return this;
+	}
+	
 	public boolean isValid() {
-		return rate!=null && to!=null && from!=null;
+		return rated && to!=null && from!=null;
 		
 	}
 	
@@ -58,18 +84,52 @@ public static class Builder {
 		String missing = "";
 		if (from==null)missing+="from ";
 		if (to==null)missing+="to ";
-		if (rate==null) missing+="rate ";
+		if (!rated) missing+="rate ";
 		throw new IllegalStateException("missing data:" + missing);
 	}
 	
 }
 
 	private CarRide(Builder b) {
-		from=b.from;
-		to=b.to;
+		if (b.places == null) {
+			from=b.from;
+			to=b.to;
+			fromId=-1;
+			toId=-1;
+		}
+		else {
+			fromId=b.places.id(b.from);
+			toId=b.places.id(b.to);
+			from=b.places.name(fromId);
+			to=b.places.name(toId);
+		}
 		rate=b.rate;
 	}
 	
+	String getFrom() {
+		return from;
+	}
+	
+	String getTo() {
+		return to;
+	}
+	
+	/**
+	 * Id of the start in the dictionary the ride was built with, or -1 if
+	 * it was built without one.
+	 */
+	int getFromId() {
+		return fromId;
+	}
+	
+	int getToId() {
+		return toId;
+	}
+	
+	int getRate() {
+		return rate;
+	}
+	
 	@Override
 	public String toString() {
 		return "CarRide[from="+from+",to="+to+",rate="+rate+"]";
@@ -0,0 +1,158 @@
+import java.util.*;
+
+/**
+ * Builds {@link CarRide}s in bulk from columnar input: the start, the
+ * destination and the rate of row {@code i} are {@code from[i]},
+ * {@code to[i]} and {@code rate[i]}.
+ * <p>
+ * One builder is reset and reused for every row, and every location is
+ * numbered in a {@link NameDictionary}, so the rides built by this batch
+ * carry the ids of their endpoints and share one string per distinct place
+ * however many rows name it. Rows breaking the rules of
+ * {@link CarRide.Builder} are not built and not thrown; their index and
+ * reasons are recorded in the {@link Result}.
+ * <p>
+ * Not thread-safe; use one batch per thread.
+ */
+public final class CarRideBatch {
+	/**
+	 * Why a row was rejected; a row may have several reasons.
+	 */
+	public enum Reason {
+		MISSING_FROM, MISSING_TO, NEGATIVE_RATE;
+
+		private int bit() {
+			return 1 << ordinal();
+		}
+	}
+
+	private final NameDictionary places;
+	private final CarRide.Builder builder;
+
+	public CarRideBatch() {
+		this(new NameDictionary());
+	}
+
+	/**
+	 * Batch numbering locations in {@code places}, which may be shared with
+	 * other batches run on the same thread.
+	 */
+	public CarRideBatch(NameDictionary places) {
+		if (places == null) {
+			throw new IllegalArgumentException("places cannot be null");
+		}
+		this.places = places;
+		this.builder = new CarRide.Builder().places(places);
+	}
+
+	public NameDictionary getPlaces() {
+		return places;
+	}
+
+	public Result build(String[] from, String[] to, int[] rate) {
+		if (from == null || to == null || rate == null) {
+			throw new IllegalArgumentException("columns cannot be null");
+		}
+		int rows = from.length;
+		if (to.length != rows || rate.length != rows) {
+			throw new IllegalArgumentException("columns must have the same length");
+		}
+		Result result = new Result(rows);
+		for (int i = 0; i < rows; i++) {
+			int reasons = 0;
+			if (from[i] == null || from[i].isBlank()) {
+				reasons |= Reason.MISSING_FROM.bit();
+			}
+			if (to[i] == null || to[i].isBlank()) {
+				reasons |= Reason.MISSING_TO.bit();
+			}
+			if (rate[i] < 0) {
+				reasons |= Reason.NEGATIVE_RATE.bit();
+			}
+			if (reasons != 0) {
+				result.reject(i, reasons);
+				continue;
+			}
+			result.accept(builder.reset()
+					.from(from[i])
+					.to(to[i])
+					.rate(rate[i])
+					.build());
+		}
+		return result;
+	}
+
+	/**
+	 * Rides built by one call to {@link CarRideBatch#build}, in row order,
+	 * and the rows rejected.
+	 */
+	public static final class Result {
+		private CarRide[] rides;
+		private int size;
+		private int[] rejectedRows;
+		private byte[] reasons;
+		private int rejected;
+
+		private Result(int rows) {
+			this.rides = new CarRide[rows];
+			this.size = 0;
+			this.rejectedRows = new int[0];
+			this.reasons = new byte[0];
+			this.rejected = 0;
+		}
+
+		private void accept(CarRide ride) {
+			rides[size++] = ride;
+		}
+
+		private void reject(int row, int why) {
+			if (rejected == rejectedRows.length) {
+				int length = Math.max(16, rejected * 2);
+				rejectedRows = Arrays.copyOf(rejectedRows, length);
+				reasons = Arrays.copyOf(reasons, length);
+			}
+			rejectedRows[rejected] = row;
+			reasons[rejected] = (byte) why;
+			rejected++;
+		}
+
+		public List<CarRide> getRides() {
+			return Collections.unmodifiableList(Arrays.asList(rides).subList(0, size));
+		}
+
+		public int getAccepted() {
+			return size;
+		}
+
+		public int getRejected() {
+			return rejected;
+		}
+
+		/**
+		 * Index in the input of the {@code i}th rejected row.
+		 */
+		public int getRejectedRow(int i) {
+			Objects.checkIndex(i, rejected);
+			return rejectedRows[i];
+		}
+
+		/**
+		 * Reasons the {@code i}th rejected row was rejected.
+		 */
+		public Set<Reason> getReasons(int i) {
+			Objects.checkIndex(i, rejected);
+			EnumSet<Reason> set = EnumSet.noneOf(Reason.class);
+			for (Reason r : Reason.values()) {
+				if ((reasons[i] & r.bit()) != 0) {
+					set.add(r);
+				}
+			}
+			return set;
+		}
+
+		@Override
+		public String toString() {
+			return "Result[accepted=" + size + ",rejected=" + rejected + "]";
+		}
+	}
+}
@@ -4,12 +4,16 @@ public abstract class City extends Region{
 	
 	public City(String n, int p) {
 		super(n);
-		if (p<0) {
+		if (isValidPopulation(p) == false) {
 			throw new IllegalArgumentException("Population cannot be negative [" + p + "]");
 		}
 		this.population=p;
 	}
 	
+	static boolean isValidPopulation(int p) {
+		return p >= 0;
+	}
+	
 	public int getPopulation() {
 		return population;
 	}
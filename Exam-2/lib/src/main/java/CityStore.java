@@ -0,0 +1,96 @@
+import java.util.*;
+
+/**
+ * Cities of a {@link State}, in the order they were added, together with
+ * running population aggregates. Maps holding the state listen for additions
+ * so their indexes stay current when cities are added after the state itself
+ * was added to the map.
+ * <p>
+ * Subclasses decide how the cities are kept: {@link ListCityStore} holds the
+ * objects, {@link ColumnarCityStore} holds primitive columns.
+ */
+abstract class CityStore {
+	private final List<Listener> listeners;
+	private long totalPopulation;
+	private int minPopulation;
+	private int maxPopulation;
+
+	interface Listener {
+		void cityAdded(City c, int position);
+	}
+
+	protected CityStore() {
+		this.listeners = new ArrayList<>();
+		this.totalPopulation = 0;
+		this.minPopulation = Integer.MAX_VALUE;
+		this.maxPopulation = 0;
+	}
+
+	public final void add(City c) {
+		int position = size();
+		append(c);
+		int p = c.getPopulation();
+		totalPopulation += p;
+		minPopulation = Math.min(minPopulation, p);
+		maxPopulation = Math.max(maxPopulation, p);
+		for (int i = 0; i < listeners.size(); i++) {
+			listeners.get(i).cityAdded(c, position);
+		}
+	}
+
+	protected abstract void append(City c);
+
+	public abstract City get(int i);
+
+	public abstract int population(int i);
+
+	public abstract int size();
+
+	public long totalPopulation() {
+		return totalPopulation;
+	}
+
+	public int minPopulation() {
+		return size() == 0 ? 0 : minPopulation;
+	}
+
+	public int maxPopulation() {
+		return maxPopulation;
+	}
+
+	public List<City> copy() {
+		int n = size();
+		List<City> temp = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			temp.add(get(i));
+		}
+		return temp;
+	}
+
+	/**
+	 * Cities with a population in {@code [lower, upper]}, in order.
+	 */
+	public List<City> range(int lower, int upper) {
+		List<City> temp = new ArrayList<>();
+		int n = size();
+		for (int i = 0; i < n; i++) {
+			int p = population(i);
+			if (p >= lower && p <= upper) {
+				temp.add(get(i));
+			}
+		}
+		return temp;
+	}
+
+	/**
+	 * Replays the current cities to {@code l} and registers it for the ones
+	 * added from now on.
+	 */
+	public void subscribe(Listener l) {
+		int n = size();
+		for (int i = 0; i < n; i++) {
+			l.cityAdded(get(i), i);
+		}
+		listeners.add(l);
+	}
+}
@@ -0,0 +1,73 @@
+import java.util.*;
+
+/**
+ * City store keeping each attribute in its own column: populations in an
+ * {@code int[]}, the city kind in a bitset (set for large cities) and the
+ * names as ids into a {@link NameDictionary}. Population scans run over the
+ * primitive column only; {@link #get} builds a fresh {@link City} equal to
+ * the one that was added.
+ * <p>
+ * Only {@link SmallCity} and {@link LargeCity} can be stored, since other
+ * city classes could not be rebuilt from the columns.
+ */
+final class ColumnarCityStore extends CityStore {
+	private final NameDictionary names;
+	private int[] populations;
+	private int[] nameIds;
+	private final BitSet large;
+	private int size;
+
+	public ColumnarCityStore(NameDictionary names) {
+		this.names = names;
+		this.populations = new int[8];
+		this.nameIds = new int[8];
+		this.large = new BitSet();
+		this.size = 0;
+	}
+
+	@Override
+	protected void append(City c) {
+		boolean isLarge = c.getClass() == LargeCity.class;
+		if (!isLarge && c.getClass() != SmallCity.class) {
+			throw new IllegalArgumentException("Columnar states only hold small and large cities");
+		}
+		if (size == populations.length) {
+			populations = Arrays.copyOf(populations, size * 2);
+			nameIds = Arrays.copyOf(nameIds, size * 2);
+		}
+		populations[size] = c.getPopulation();
+		nameIds[size] = names.id(c.getName());
+		large.set(size, isLarge);
+		size++;
+	}
+
+	@Override
+	public City get(int i) {
+		Objects.checkIndex(i, size);
+		String name = names.name(nameIds[i]);
+		return large.get(i) ? new LargeCity(name, populations[i]) : new SmallCity(name, populations[i]);
+	}
+
+	@Override
+	public int population(int i) {
+		Objects.checkIndex(i, size);
+		return populations[i];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public List<City> range(int lower, int upper) {
+		List<City> temp = new ArrayList<>();
+		int[] p = populations;
+		for (int i = 0; i < size; i++) {
+			if (p[i] >= lower && p[i] <= upper) {
+				temp.add(get(i));
+			}
+		}
+		return temp;
+	}
+}
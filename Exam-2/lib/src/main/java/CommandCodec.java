@@ -0,0 +1,237 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Binary encoding of {@link Gala} commands shared by {@link GalaJournal} and
+ * {@link GalaSnapshot}.
+ * <p>
+ * A command is its kind, the guest it refers to and, for an RSVP, the flag;
+ * a batch is its kind, its size and every operation in turn.
+ * Guests are numbered by identity in the order the codec first meets them.
+ * A reference is {@code int id, byte isNew}; the first reference to a guest
+ * also carries its RSVP flag and UTF-8 name, so decoding hands every command
+ * the same guest object the original did.
+ */
+final class CommandCodec {
+	static final byte ADD = 1;
+	static final byte DELETE = 2;
+	static final byte RSVP = 3;
+	static final byte BATCH = 4;
+
+	private final IdentityHashMap<Guest, Integer> ids;
+	private ByteBuffer out;
+
+	/**
+	 * Codec continuing the numbering of {@code guests}, listed by id.
+	 */
+	CommandCodec(List<Guest> guests) {
+		this(guests.size());
+		for (int i = 0; i < guests.size(); i++) {
+			ids.put(guests.get(i), i);
+		}
+	}
+
+	/**
+	 * Empty codec sized for about {@code expectedGuests} guests.
+	 */
+	CommandCodec(int expectedGuests) {
+		this.ids = new IdentityHashMap<>(expectedGuests);
+		this.out = ByteBuffer.allocate(256);
+	}
+
+	/**
+	 * The guests numbered so far, by id.
+	 */
+	List<Guest> guests() {
+		Guest[] byId = new Guest[ids.size()];
+		for (java.util.Map.Entry<Guest, Integer> e : ids.entrySet()) {
+			byId[e.getValue()] = e.getKey();
+		}
+		return new ArrayList<>(Arrays.asList(byId));
+	}
+
+	static boolean supports(Command c) {
+		return c instanceof Gala.Add || c instanceof Gala.Delete || c instanceof Gala.RSVP
+				|| c instanceof Gala.Batch;
+	}
+
+	/**
+	 * Empties the output buffer.
+	 */
+	void clear() {
+		out.clear();
+	}
+
+	/**
+	 * The bytes written since the last {@link #clear}, ready to be read.
+	 */
+	ByteBuffer flip() {
+		out.flip();
+		return out;
+	}
+
+	void put(byte b) {
+		ensure(1);
+		out.put(b);
+	}
+
+	void putInt(int i) {
+		ensure(4);
+		out.putInt(i);
+	}
+
+	void putLong(long l) {
+		ensure(8);
+		out.putLong(l);
+	}
+
+	void encode(Command c) {
+		encode(c, null, 0);
+	}
+
+	/**
+	 * Encodes {@code c} as if its guests had the RSVP flags {@link #flags}
+	 * stored into {@code flags} from {@code at}, or their current ones for
+	 * {@code null}; returns the index after the last flag used.
+	 */
+	int encode(Command c, boolean[] flags, int at) {
+		if (c instanceof Gala.Add a) {
+			put(ADD);
+			encode(a.guest(), flags == null ? a.guest().hasRSVP() : flags[at]);
+			return at + 1;
+		}
+		if (c instanceof Gala.Delete d) {
+			put(DELETE);
+			encode(d.guest(), flags == null ? d.guest().hasRSVP() : flags[at]);
+			return at + 1;
+		}
+		if (c instanceof Gala.RSVP r) {
+			put(RSVP);
+			encode(r.guest(), flags == null ? r.guest().hasRSVP() : flags[at]);
+			put(r.isRSVP() ? (byte) 1 : 0);
+			return at + 1;
+		}
+		if (c instanceof Gala.Batch b) {
+			// a count, then every operation as kind, guest and flag
+			put(BATCH);
+			putInt(b.size());
+			for (int i = 0; i < b.size(); i++) {
+				put(b.kind(i));
+				encode(b.guest(i), flags == null ? b.guest(i).hasRSVP() : flags[at + i]);
+				put(b.isRSVP(i) ? (byte) 1 : 0);
+			}
+			return at + b.size();
+		}
+		throw new IllegalArgumentException("command cannot be journaled");
+	}
+
+	/**
+	 * Number of guest references in {@code c}, each with a flag in
+	 * {@link #flags}.
+	 */
+	static int references(Command c) {
+		return c instanceof Gala.Batch b ? b.size() : 1;
+	}
+
+	/**
+	 * Stores the current RSVP flags of the guests of {@code c} into
+	 * {@code flags} from {@code at}; returns the index after the last.
+	 */
+	static int flags(Command c, boolean[] flags, int at) {
+		if (c instanceof Gala.Add a) {
+			flags[at] = a.guest().hasRSVP();
+		}
+		else if (c instanceof Gala.Delete d) {
+			flags[at] = d.guest().hasRSVP();
+		}
+		else if (c instanceof Gala.RSVP r) {
+			flags[at] = r.guest().hasRSVP();
+		}
+		else if (c instanceof Gala.Batch b) {
+			for (int i = 0; i < b.size(); i++) {
+				flags[at + i] = b.guest(i).hasRSVP();
+			}
+		}
+		return at + references(c);
+	}
+
+	void encode(Guest g) {
+		encode(g, g.hasRSVP());
+	}
+
+	/**
+	 * Encodes a reference to {@code g}; the first one carries {@code rsvp}
+	 * as its flag.
+	 */
+	void encode(Guest g, boolean rsvp) {
+		Integer id = ids.get(g);
+		if (id != null) {
+			ensure(5);
+			out.putInt(id).put((byte) 0);
+			return;
+		}
+		byte[] name = g.getName().getBytes(StandardCharsets.UTF_8);
+		ensure(10 + name.length);
+		id = ids.size();
+		ids.put(g, id);
+		out.putInt(id).put((byte) 1).put(rsvp ? (byte) 1 : 0).putInt(name.length).put(name);
+	}
+
+	private void ensure(int bytes) {
+		if (out.remaining() < bytes) {
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+			out.flip();
+			bigger.put(out);
+			out = bigger;
+		}
+	}
+
+	/**
+	 * Reads one command for {@code gala}; {@code guests} lists the guests
+	 * by id and grows with the new ones met.
+	 */
+	static Command decode(ByteBuffer in, Gala gala, List<Guest> guests) {
+		byte kind = in.get();
+		if (kind == BATCH) {
+			Gala.Batch b = gala.new Batch();
+			int size = in.getInt();
+			for (int i = 0; i < size; i++) {
+				byte op = in.get();
+				if (op != ADD && op != DELETE && op != RSVP) {
+					throw new IllegalStateException("unknown command kind");
+				}
+				b.op(op, decodeGuest(in, guests), in.get() == 1);
+			}
+			return b;
+		}
+		Guest g = decodeGuest(in, guests);
+		switch (kind) {
+		case ADD:
+			return gala.new Add(g);
+		case DELETE:
+			return gala.new Delete(g);
+		case RSVP:
+			return gala.new RSVP(g, in.get() == 1);
+		default:
+			throw new IllegalStateException("unknown command kind");
+		}
+	}
+
+	static Guest decodeGuest(ByteBuffer in, List<Guest> guests) {
+		int id = in.getInt();
+		if (in.get() == 0) {
+			return guests.get(id);
+		}
+		boolean rsvp = in.get() == 1;
+		byte[] name = new byte[in.getInt()];
+		in.get(name);
+		if (id != guests.size()) {
+			throw new IllegalStateException("guest ids out of order");
+		}
+		Guest g = new Guest(new String(name, StandardCharsets.UTF_8));
+		g.setRSVP(rsvp);
+		guests.add(g);
+		return g;
+	}
+}
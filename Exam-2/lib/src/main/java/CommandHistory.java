@@ -0,0 +1,188 @@
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * Undo history of a {@link Gala} bounded by a {@link HistoryPolicy}.
+ * <p>
+ * Commands sit in a ring buffer together with the time they were pushed and
+ * an estimate of the bytes they retain, so the oldest command is dropped in
+ * O(1) without shifting the others. The buffer doubles until it reaches the
+ * maximum depth and never grows past it. Expired commands are dropped
+ * whenever the history is pushed or popped, or when {@link #expire()} is
+ * called; reading it never changes it, so a snapshot sees the same commands
+ * from start to end. Every drop is counted by the limit that caused it.
+ */
+final class CommandHistory {
+	private final HistoryPolicy policy;
+	private final LongSupplier clock;
+	private Command[] commands;
+	private long[] times;
+	private int[] bytes;
+	private int head;
+	private int size;
+	private long retainedBytes;
+	private final long[] evictions;
+
+	CommandHistory(HistoryPolicy policy) {
+		this(policy, System::nanoTime);
+	}
+
+	CommandHistory(HistoryPolicy policy, LongSupplier clock) {
+		if (policy == null) {
+			throw new IllegalArgumentException("policy cannot be null");
+		}
+		int capacity = policy.getMaxDepth() == 0 ? 16 : Math.min(16, policy.getMaxDepth());
+		this.policy = policy;
+		this.clock = clock;
+		this.commands = new Command[capacity];
+		this.times = new long[capacity];
+		this.bytes = new int[capacity];
+		this.head = 0;
+		this.size = 0;
+		this.retainedBytes = 0;
+		this.evictions = new long[HistoryPolicy.Limit.values().length];
+	}
+
+	void push(Command c) {
+		long now = clock.getAsLong();
+		expire(now);
+		if (size > 0 && size == policy.getMaxDepth()) {
+			evict(HistoryPolicy.Limit.DEPTH);
+		}
+		if (size == commands.length) {
+			grow();
+		}
+		int i = slot(size);
+		int estimate = estimate(c);
+		commands[i] = c;
+		times[i] = now;
+		bytes[i] = estimate;
+		size++;
+		retainedBytes += estimate;
+		while (policy.getMaxBytes() > 0 && retainedBytes > policy.getMaxBytes() && size > 1) {
+			evict(HistoryPolicy.Limit.BYTES);
+		}
+	}
+
+	Command pop() {
+		expire(clock.getAsLong());
+		if (size == 0) {
+			throw new IndexOutOfBoundsException("Index -1 out of bounds for length 0");
+		}
+		int i = slot(--size);
+		Command c = commands[i];
+		commands[i] = null;
+		retainedBytes -= bytes[i];
+		return c;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Number of commands retained, including any that have expired since the
+	 * history was last pushed, popped or expired.
+	 */
+	int getSize() {
+		return size;
+	}
+
+	/**
+	 * Drops the commands older than the policy's maximum age.
+	 */
+	void expire() {
+		expire(clock.getAsLong());
+	}
+
+	/**
+	 * Command {@code i} counting from the oldest retained one.
+	 */
+	Command get(int i) {
+		Objects.checkIndex(i, size);
+		return commands[slot(i)];
+	}
+
+	void clear() {
+		while (size > 0) {
+			pop();
+		}
+	}
+
+	long retainedBytes() {
+		return retainedBytes;
+	}
+
+	long evictions(HistoryPolicy.Limit limit) {
+		return evictions[limit.ordinal()];
+	}
+
+	private void expire(long now) {
+		long maxAge = policy.getMaxAgeNanos();
+		while (maxAge > 0 && size > 0 && now - times[head] > maxAge) {
+			evict(HistoryPolicy.Limit.AGE);
+		}
+	}
+
+	private void evict(HistoryPolicy.Limit limit) {
+		retainedBytes -= bytes[head];
+		commands[head] = null;
+		head = (head + 1) % commands.length;
+		size--;
+		evictions[limit.ordinal()]++;
+	}
+
+	private int slot(int i) {
+		return (head + i) % commands.length;
+	}
+
+	private void grow() {
+		int capacity = commands.length * 2;
+		if (policy.getMaxDepth() > 0) {
+			capacity = Math.min(capacity, policy.getMaxDepth());
+		}
+		Command[] c = new Command[capacity];
+		long[] t = new long[capacity];
+		int[] b = new int[capacity];
+		for (int i = 0; i < size; i++) {
+			int j = slot(i);
+			c[i] = commands[j];
+			t[i] = times[j];
+			b[i] = bytes[j];
+		}
+		commands = c;
+		times = t;
+		bytes = b;
+		head = 0;
+	}
+
+	/**
+	 * Rough count of the bytes {@code c} keeps reachable: the command object
+	 * and its guests with their names. A guest shared with the guest list is
+	 * counted all the same.
+	 */
+	static int estimate(Command c) {
+		if (c instanceof Gala.Add a) {
+			return 16 + estimate(a.guest());
+		}
+		if (c instanceof Gala.Delete d) {
+			return 16 + estimate(d.guest());
+		}
+		if (c instanceof Gala.RSVP r) {
+			return 24 + estimate(r.guest());
+		}
+		if (c instanceof Gala.Batch b) {
+			long total = 48;
+			for (int i = 0; i < b.size(); i++) {
+				total += 14 + estimate(b.guest(i));
+			}
+			return (int) Math.min(Integer.MAX_VALUE, total);
+		}
+		return 16;
+	}
+
+	private static int estimate(Guest g) {
+		// the guest, its name string and the name's byte array
+		return 24 + 24 + 16 + g.getName().length();
+	}
+}
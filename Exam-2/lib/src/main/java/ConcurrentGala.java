@@ -0,0 +1,331 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * {@link Gala} that may be used from many threads at once.
+ * <p>
+ * Adds, deletes, batches, undo and redo take a write lock and run one at a
+ * time, so they are linearizable. An RSVP only locks one of a set of
+ * stripes, chosen by the guest's hash, so RSVPs on guests in different
+ * stripes run in parallel and share no lock word. It checks that no write
+ * lock is held; a writer in turn passes through every stripe after taking
+ * its lock, waiting out the RSVPs already running. The partition bits are
+ * flipped atomically, as guests of different stripes share bitset words.
+ * <p>
+ * An RSVP takes a number from a global sequence while it holds its stripe
+ * and is logged in the stripe; the logs are merged into the undo history in
+ * sequence order before the next operation holding the write lock, so the
+ * history has one global order that agrees with the order operations took
+ * effect. An RSVP while there is something to redo clears the redo stack
+ * and so takes the write lock as well.
+ * <p>
+ * Lists are versions of the guest list taken under the write lock;
+ * {@link #pendingView()} and {@link #rsvpView()} return such versions rather
+ * than live views. An RSVP to a guest whose part of the list is still held
+ * by a version runs exclusively, as that part has to be copied first. Counts are read without blocking RSVPs and may miss ones
+ * still in progress. An RSVP enters the history when the logs are merged,
+ * which is when its age for {@link HistoryPolicy} starts. Its
+ * {@link #changes()} are queued by the thread making them, RSVPs from
+ * inside their stripe, and published by it once it holds no lock, so a
+ * subscriber waiting to catch up never holds up the gala's readers. A
+ * concurrent gala cannot be journaled.
+ */
+final class ConcurrentGala extends Gala {
+	private final StampedLock structure;
+	private final Stripe[] stripes;
+	private final AtomicLong sequence;
+	private long merged;
+	private final int mergeMask;
+	private volatile GalaFeed feed;
+
+	public ConcurrentGala() {
+		this(HistoryPolicy.unbounded());
+	}
+
+	public ConcurrentGala(HistoryPolicy policy) {
+		super(policy);
+		int count = 16;
+		while (count < 4 * Runtime.getRuntime().availableProcessors()) {
+			count *= 2;
+		}
+		this.structure = new StampedLock();
+		this.stripes = new Stripe[count];
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new Stripe();
+		}
+		this.sequence = new AtomicLong();
+		this.merged = 0;
+		this.mergeMask = (1 << 16) - 1;
+		this.feed = null;
+	}
+
+	@Override
+	public void execute(Command c) {
+		if (c instanceof Gala.RSVP r && rsvp(r)) {
+			return;
+		}
+		change(() -> super.execute(c));
+	}
+
+	@Override
+	public void undo() {
+		change(super::undo);
+	}
+
+	@Override
+	public void redo() {
+		change(super::redo);
+	}
+
+	@Override
+	public int undoSize() {
+		return exclusive(super::undoSize);
+	}
+
+	@Override
+	public int redoSize() {
+		return exclusive(super::redoSize);
+	}
+
+	@Override
+	public long evictions(HistoryPolicy.Limit limit) {
+		return exclusive(() -> super.evictions(limit));
+	}
+
+	@Override
+	public long historyBytes() {
+		return exclusive(super::historyBytes);
+	}
+
+	@Override
+	public boolean hasGuest(Guest g) {
+		long stamp = structure.readLock();
+		try {
+			return super.hasGuest(g);
+		}
+		finally {
+			structure.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public List<Guest> getGuests() {
+		return exclusive(super::getGuests);
+	}
+
+	@Override
+	public List<Guest> getPending() {
+		return exclusive(super::getPending);
+	}
+
+	@Override
+	public List<Guest> getRSVP() {
+		return exclusive(super::getRSVP);
+	}
+
+	@Override
+	public List<Guest> findByPrefix(String prefix, int k) {
+		return exclusive(() -> super.findByPrefix(prefix, k));
+	}
+
+	@Override
+	public List<Guest> findSimilar(String name, int maxDistance, int k) {
+		return exclusive(() -> super.findSimilar(name, maxDistance, k));
+	}
+
+	@Override
+	public int pendingCount() {
+		long stamp = structure.readLock();
+		try {
+			return registry().size() - confirmed();
+		}
+		finally {
+			structure.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public int rsvpCount() {
+		long stamp = structure.readLock();
+		try {
+			return confirmed();
+		}
+		finally {
+			structure.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	GalaFeed changes(int bufferSize) {
+		return exclusive(() -> super.changes(bufferSize));
+	}
+
+	/**
+	 * A feed holding the changes until the locks are released; called
+	 * holding the write lock.
+	 */
+	@Override
+	GalaFeed newFeed(int bufferSize) {
+		feed = new GalaFeed(bufferSize, true);
+		return feed;
+	}
+
+	@Override
+	public Collection<Guest> pendingView() {
+		return Collections.unmodifiableList(getPending());
+	}
+
+	@Override
+	public Collection<Guest> rsvpView() {
+		return Collections.unmodifiableList(getRSVP());
+	}
+
+	/**
+	 * Runs an RSVP holding its stripe; returns false if it has to run
+	 * exclusively instead. Every so many RSVPs the one that took the number
+	 * merges the logs, so they stay bounded while only RSVPs come in.
+	 */
+	private boolean rsvp(Gala.RSVP r) {
+		Guest g = r.guest();
+		Stripe s = stripes[stripe(g)];
+		long n;
+		synchronized (s) {
+			// a writer taking its lock after this waits for the stripe
+			if (structure.tryOptimisticRead() == 0 || redoStack().isEmpty() == false) {
+				return false;
+			}
+			GuestRegistry registry = registry();
+			int slot = registry.slotOf(g);
+			if (slot < 0) {
+				throw new IllegalStateException("guest doesn't exist");
+			}
+			if (registry.writable(slot) == false) {
+				return false;
+			}
+			s.delta += registry.setRSVPShared(g, slot, r.isRSVP());
+			n = sequence.getAndIncrement();
+			s.log(n, r);
+		}
+		flush();
+		if ((n & mergeMask) == mergeMask) {
+			exclusive(() -> null);
+		}
+		return true;
+	}
+
+	private int stripe(Guest g) {
+		int h = g.hashCode();
+		return (h ^ (h >>> 16)) & (stripes.length - 1);
+	}
+
+	/**
+	 * Confirmed count including RSVPs not merged yet; called holding a
+	 * read lock.
+	 */
+	private int confirmed() {
+		int count = registry().confirmedCount();
+		for (Stripe s : stripes) {
+			synchronized (s) {
+				count += s.delta;
+			}
+		}
+		return count;
+	}
+
+	private <T> T exclusive(Supplier<T> action) {
+		long stamp = structure.writeLock();
+		try {
+			for (Stripe s : stripes) {
+				synchronized (s) {
+					// nothing: waits for an RSVP running in the stripe
+				}
+			}
+			merge();
+			return action.get();
+		}
+		finally {
+			structure.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Runs a change holding the write lock, then publishes it. Reads do not
+	 * publish, so a subscriber may make them while changes wait for it.
+	 */
+	private void change(Runnable action) {
+		try {
+			exclusive(() -> {
+				action.run();
+				return null;
+			});
+		}
+		finally {
+			flush();
+		}
+	}
+
+	/**
+	 * Publishes the changes made holding the locks; called holding none.
+	 */
+	private void flush() {
+		GalaFeed f = feed;
+		if (f != null) {
+			f.flush();
+		}
+	}
+
+	/**
+	 * Moves the logged RSVPs into the undo history in sequence order and
+	 * their count changes into the registry; called holding the write lock
+	 * once every number taken from the sequence has been logged.
+	 */
+	private void merge() {
+		int count = (int) (sequence.get() - merged);
+		if (count == 0) {
+			return;
+		}
+		Command[] ordered = new Command[count];
+		int delta = 0;
+		for (Stripe s : stripes) {
+			for (int i = 0; i < s.size; i++) {
+				ordered[(int) (s.sequence[i] - merged)] = s.commands[i];
+				s.commands[i] = null;
+			}
+			s.size = 0;
+			delta += s.delta;
+			s.delta = 0;
+		}
+		registry().addConfirmed(delta);
+		CommandHistory history = undoHistory();
+		for (Command c : ordered) {
+			history.push(c);
+		}
+		merged += count;
+	}
+
+	private static final class Stripe {
+		private long[] sequence;
+		private Command[] commands;
+		private int size;
+		private int delta;
+
+		private Stripe() {
+			this.sequence = new long[16];
+			this.commands = new Command[16];
+			this.size = 0;
+			this.delta = 0;
+		}
+
+		private void log(long n, Command c) {
+			if (size == commands.length) {
+				sequence = Arrays.copyOf(sequence, size * 2);
+				commands = Arrays.copyOf(commands, size * 2);
+			}
+			sequence[size] = n;
+			commands[size] = c;
+			size++;
+		}
+	}
+}
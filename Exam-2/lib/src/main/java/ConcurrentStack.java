@@ -0,0 +1,137 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Lock-free {@link IStack} after Treiber: an immutable linked list whose
+ * top is swung with compare-and-set, so pushes and pops from many threads
+ * never block each other and never copy. A thread whose swing failed backs
+ * off for a random, doubling number of spins before it retries, which keeps
+ * the top from bouncing between cores under heavy contention.
+ * <p>
+ * Every node carries the size of the stack it tops, so {@link #getSize()}
+ * is O(1) and always agrees with the top it was read from. A node is never
+ * reused once popped, so the list cannot suffer from ABA. {@link #get(int)}
+ * walks down from the top and is O(n).
+ */
+public final class ConcurrentStack<T> implements IStack<T> {
+	private static final VarHandle TOP;
+	private static final int MAX_BACKOFF = 1 << 10;
+
+	static {
+		try {
+			TOP = MethodHandles.lookup().findVarHandle(ConcurrentStack.class, "top", Node.class);
+		}
+		catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private volatile Node<T> top;
+
+	public ConcurrentStack() {
+		this.top = null;
+	}
+
+	@Override
+	public T peek() {
+		Node<T> t = top;
+		if (t == null) {
+			throw new IndexOutOfBoundsException("Index -1 out of bounds for length 0");
+		}
+		return t.value;
+	}
+
+	@Override
+	public T get(int i) {
+		Node<T> t = top;
+		int size = t == null ? 0 : t.size;
+		if (i < 0 || i >= size) {
+			throw new IndexOutOfBoundsException("Index " + i + " out of bounds for length " + size);
+		}
+		for (int depth = size - 1; depth > i; depth--) {
+			t = t.next;
+		}
+		return t.value;
+	}
+
+	@Override
+	public T pop() {
+		int backoff = 1;
+		while (true) {
+			Node<T> t = top;
+			if (t == null) {
+				throw new IndexOutOfBoundsException("Index -1 out of bounds for length 0");
+			}
+			if (TOP.compareAndSet(this, t, t.next)) {
+				return t.value;
+			}
+			backoff = backoff(backoff);
+		}
+	}
+
+	@Override
+	public boolean push(T o) {
+		int backoff = 1;
+		while (true) {
+			Node<T> t = top;
+			if (TOP.compareAndSet(this, t, new Node<>(o, t))) {
+				return true;
+			}
+			backoff = backoff(backoff);
+		}
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return top == null;
+	}
+
+	@Override
+	public int getSize() {
+		Node<T> t = top;
+		return t == null ? 0 : t.size;
+	}
+
+	@Override
+	public void clear() {
+		top = null;
+	}
+
+	@Override
+	public String toString() {
+		List<T> list = new ArrayList<>();
+		for (Node<T> t = top; t != null; t = t.next) {
+			list.add(t.value);
+		}
+		Collections.reverse(list);
+		return "ConcurrentStack" + list.toString();
+	}
+
+	/**
+	 * Spins for a random count below {@code limit}; returns the limit for the
+	 * next failure.
+	 */
+	private static int backoff(int limit) {
+		int spins = ThreadLocalRandom.current().nextInt(limit);
+		for (int i = 0; i < spins; i++) {
+			Thread.onSpinWait();
+		}
+		return Math.min(limit * 2, MAX_BACKOFF);
+	}
+
+	private static final class Node<T> {
+		private final T value;
+		private final Node<T> next;
+		private final int size;
+
+		private Node(T value, Node<T> next) {
+			this.value = value;
+			this.next = next;
+			this.size = next == null ? 1 : next.size + 1;
+		}
+	}
+}
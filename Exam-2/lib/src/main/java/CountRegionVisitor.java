@@ -1,11 +1,15 @@
 
-public class CountRegionVisitor implements IRegionVisitor{
+public class CountRegionVisitor implements IMergeableVisitor<CountRegionVisitor>{
 	private int countState;
 	private int countCity;
 	
 	public CountRegionVisitor() {
+		this.countState=0;
 		this.countCity=0;
-		this.countCity=0;
+	}
+	CountRegionVisitor(int states, int cities) {
+		this.countState=states;
+		this.countCity=cities;
 	}
 	@Override
 	public void visit (State s) {
@@ -27,6 +31,15 @@ public class CountRegionVisitor implements IRegionVisitor{
 	public int getCities() {
 		return countCity;
 	}
+	@Override
+	public CountRegionVisitor split() {
+		return new CountRegionVisitor();
+	}
+	@Override
+	public void merge(CountRegionVisitor other) {
+		countState+=other.countState;
+		countCity+=other.countCity;
+	}
 	
 	
 }
@@ -1,19 +1,68 @@
 import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.function.LongSupplier;
 class Gala {
-	private final Stack<Command> undo;
-	private final Stack<Command> redo;
-	private final List<Guest> guestList;
+	private final CommandHistory undo;
+	private final IStack<Command> redo;
+	private final GuestRegistry guestList;
+	private GalaJournal journal;
+	private GalaFeed feed;
+	private GuestSearch search;
 	
 	public Gala() {
-		this.undo=new Stack<>();
-		this.redo=new Stack<>();
-		this.guestList=new ArrayList<>();
+		this(HistoryPolicy.unbounded());
+	}
+	
+	/**
+	 * Gala whose undo history is bounded by {@code policy}; the redo stack
+	 * only ever holds commands undone from it.
+	 */
+	public Gala(HistoryPolicy policy) {
+		this(policy, System::nanoTime);
+	}
+	
+	/**
+	 * Gala whose undo history is bounded by {@code policy}, keeping the
+	 * commands undone in {@code redo}, such as a {@link ConcurrentStack}
+	 * for a gala shared between threads.
+	 */
+	public Gala(HistoryPolicy policy, IStack<Command> redo) {
+		this(policy, System::nanoTime, redo);
+	}
+	
+	Gala(HistoryPolicy policy, LongSupplier clock) {
+		this(policy, clock, new Stack<>());
+	}
+	
+	Gala(HistoryPolicy policy, LongSupplier clock, IStack<Command> redo) {
+		if (redo == null) {
+			throw new IllegalArgumentException("redo stack cannot be null");
+		}
+		this.undo=new CommandHistory(policy, clock);
+		this.redo=redo;
+		this.guestList=new GuestRegistry();
+		this.journal=null;
+		this.feed=null;
+		this.search=null;
+	}
+	
+	/**
+	 * Records every later execute, undo and redo in {@code j}.
+	 */
+	void attach (GalaJournal j) {
+		this.journal=j;
 	}
 	
 	public void execute (Command c) {
+		if (journal != null) {
+			journal.check(c);
+		}
 		c.execute();
 		undo.push(c);
 		redo.clear();
+		if (journal != null) {
+			journal.executed(c);
+		}
 	}
 	
 	public void undo() {
@@ -21,6 +70,9 @@ class Gala {
 		Command temp = undo.pop();
 		temp.undo();
 		redo.push(temp);
+		if (journal != null) {
+			journal.undone();
+		}
 	}
 		else {
 			throw new IndexOutOfBoundsException("Index -1 out of bounds for length 0");
@@ -31,6 +83,9 @@ class Gala {
 		Command temp = redo.pop();
 		temp.execute();
 		undo.push(temp);
+		if (journal != null) {
+			journal.redone();
+		}
 	}
 		else {
 			throw new IndexOutOfBoundsException("Index -1 out of bounds for length 0");
@@ -38,41 +93,122 @@ class Gala {
 	}
 	
 	public int undoSize() {
+		this.undo.expire();
 		return this.undo.getSize();
 	}
 	public int redoSize() {
 		return this.redo.getSize();
 	}
 	
+	/**
+	 * Number of commands the history has dropped because of {@code limit}.
+	 */
+	public long evictions(HistoryPolicy.Limit limit) {
+		return undo.evictions(limit);
+	}
+	/**
+	 * Estimate of the bytes the undo history keeps reachable.
+	 */
+	public long historyBytes() {
+		return undo.retainedBytes();
+	}
+	
+	GuestRegistry registry() {
+		return guestList;
+	}
+	CommandHistory undoHistory() {
+		return undo;
+	}
+	IStack<Command> redoStack() {
+		return redo;
+	}
+	
 	public boolean hasGuest (Guest g) {
 		return guestList.contains(g);
 	}
 	public List<Guest> getGuests(){
-		List<Guest> temp = new ArrayList<>();
-		for (Guest g:guestList) {
-			temp.add(g);
-		}
-		return temp;
+		return guestList.toList();
 	}
 	
 	public List<Guest> getPending(){
-		List<Guest> temp = new ArrayList<>();
-		for (Guest g:guestList) {
-			if (g.hasRSVP()==false) {
-			temp.add(g);
-			}
-		}
-		return temp;
+		return guestList.pending();
 	}
 	
 	public List<Guest> getRSVP(){
-		List<Guest> temp = new ArrayList<>();
-		for (Guest g:guestList) {
-			if (g.hasRSVP()) {
-			temp.add(g);
-			}
+		return guestList.confirmed();
+	}
+	
+	/**
+	 * Up to {@code k} guests with a word of their name starting with
+	 * {@code prefix}, ignoring case; see {@link GuestSearch}.
+	 */
+	public List<Guest> findByPrefix (String prefix, int k) {
+		return search().prefix(prefix, k);
+	}
+	
+	/**
+	 * Up to {@code k} guests whose name, or a word of it, is at most
+	 * {@code maxDistance} edits from {@code name}, closest first.
+	 */
+	public List<Guest> findSimilar (String name, int maxDistance, int k) {
+		return search().fuzzy(name, maxDistance, k);
+	}
+	
+	/**
+	 * The search index, built on first use and kept up to date from then on.
+	 */
+	private GuestSearch search() {
+		if (search == null) {
+			search=new GuestSearch(guestList);
+			guestList.search(search);
+		}
+		return search;
+	}
+	
+	public int pendingCount() {
+		return guestList.pendingCount();
+	}
+	public int rsvpCount() {
+		return guestList.confirmedCount();
+	}
+	
+	/**
+	 * Feed of the changes to the guest list from now on, with buffers of
+	 * {@link Flow#defaultBufferSize()} changes per
+	 * subscriber; the same feed until it is closed.
+	 */
+	public GalaFeed changes(){
+		return changes(Flow.defaultBufferSize());
+	}
+	
+	/**
+	 * Feed of the changes with buffers of {@code bufferSize} changes, if it
+	 * has to be opened.
+	 */
+	GalaFeed changes(int bufferSize){
+		if (feed == null || feed.isClosed()) {
+			feed=newFeed(bufferSize);
+			guestList.feed(feed);
 		}
-		return temp;
+		return feed;
+	}
+	GalaFeed newFeed(int bufferSize){
+		return new GalaFeed(bufferSize);
+	}
+	
+	/**
+	 * Read-only view of the pending guests that follows later commands,
+	 * for callers polling the list without paying for a copy.
+	 */
+	public Collection<Guest> pendingView(){
+		return guestList.pendingView();
+	}
+	
+	/**
+	 * Read-only view of the confirmed guests that follows later commands.
+	 */
+	public Collection<Guest> rsvpView(){
+		return guestList.confirmedView();
 	}
 	
 	
@@ -82,23 +218,22 @@ class Gala {
 		public Add (Guest g) {
 			this.guest=g;
 		}
+		
+		Guest guest() {
+			return guest;
+		}
 
 		@Override
 		public Command execute() {
-			if (guestList.contains(guest)) {
+			if (guestList.add(guest)==false) {
 				throw new IllegalStateException("guest exists already");
 			}
-			else {
-				guestList.add(guest);
-			}
 			return this;
 		}
 
 		@Override
 		public Command undo() {
-			if (guestList.contains(guest)) {
-				guestList.remove(guest);
-			}
+			guestList.remove(guest);
 			return this;
 		}
 		
@@ -110,23 +245,22 @@ private Guest guest;
 		public Delete (Guest g) {
 			this.guest=g;
 		}
+		
+		Guest guest() {
+			return guest;
+		}
 
 		@Override
 		public Command execute() {
-			if (guestList.contains(guest)==false) {
+			if (guestList.remove(guest)==false) {
 				throw new IllegalStateException("guest doesn't exist");
 			}
-			else {
-				guestList.remove(guest);
-			}
 			return this;
 		}
 
 		@Override
 		public Command undo() {
-			if (guestList.contains(guest)==false) {
-				guestList.add(guest);
-			}
+			guestList.add(guest);
 			return this;
 		}
 	}
@@ -138,21 +272,163 @@ private Guest guest;
 			this.guest=g;
 			this.isRSVP=RSVP;
 		}
+		
+		Guest guest() {
+			return guest;
+		}
+		boolean isRSVP() {
+			return isRSVP;
+		}
 
 		@Override
 		public Command execute() {
 			if (guestList.contains(guest)==false) {
 				throw new IllegalStateException("guest doesn't exist");
 			}
-			guest.setRSVP(isRSVP);
+			guestList.setRSVP(guest, isRSVP);
+			return this;
+		}
+
+		@Override
+		public Command undo() {
+			guestList.setRSVP(guest, !isRSVP);
+			return this;
+		}
+		
+	}
+	
+	/**
+	 * Composite of guest adds, deletes and RSVPs that executes, undoes and
+	 * redoes as a single step. The operations are kept in plain arrays
+	 * rather than as one command object each, and each checks membership
+	 * once while it is applied. If one fails, the operations before it are
+	 * undone again before the exception is thrown, so the batch applies
+	 * completely or not at all. A batch cannot grow once it has been
+	 * executed.
+	 */
+	final class Batch implements Command {
+		private Guest[] guests;
+		private byte[] kinds;
+		private boolean[] flags;
+		private int size;
+		private boolean executed;
+		
+		public Batch () {
+			this.guests=new Guest[16];
+			this.kinds=new byte[16];
+			this.flags=new boolean[16];
+			this.size=0;
+			this.executed=false;
+		}
+		
+		public Batch add (Guest g) {
+			return op(CommandCodec.ADD, g, false);
+		}
+		public Batch delete (Guest g) {
+			return op(CommandCodec.DELETE, g, false);
+		}
+		public Batch rsvp (Guest g, boolean RSVP) {
+			return op(CommandCodec.RSVP, g, RSVP);
+		}
+		
+		public int size() {
+			return size;
+		}
+		Guest guest(int i) {
+			return guests[i];
+		}
+		byte kind(int i) {
+			return kinds[i];
+		}
+		boolean isRSVP(int i) {
+			return flags[i];
+		}
+		
+		Batch op (byte kind, Guest g, boolean RSVP) {
+			if (executed) {
+				throw new IllegalStateException("batch has been executed");
+			}
+			if (g == null) {
+				throw new IllegalArgumentException("guest cannot be null");
+			}
+			if (size == guests.length) {
+				guests=Arrays.copyOf(guests, size*2);
+				kinds=Arrays.copyOf(kinds, size*2);
+				flags=Arrays.copyOf(flags, size*2);
+			}
+			guests[size]=g;
+			kinds[size]=kind;
+			flags[size]=RSVP;
+			size++;
+			return this;
+		}
+
+		@Override
+		public Command execute() {
+			executed=true;
+			int adds=0;
+			for (int i = 0; i < size; i++) {
+				if (kinds[i] == CommandCodec.ADD) {
+					adds++;
+				}
+			}
+			guestList.reserve(adds);
+			int i=0;
+			try {
+				for (; i < size; i++) {
+					apply(i);
+				}
+			}
+			catch (IllegalStateException e) {
+				while (--i >= 0) {
+					revert(i);
+				}
+				throw e;
+			}
 			return this;
 		}
 
 		@Override
 		public Command undo() {
-			guest.setRSVP(!isRSVP);
+			for (int i = size-1; i >= 0; i--) {
+				revert(i);
+			}
 			return this;
 		}
 		
+		private void apply (int i) {
+			Guest g=guests[i];
+			switch (kinds[i]) {
+			case CommandCodec.ADD:
+				if (guestList.add(g)==false) {
+					throw new IllegalStateException("guest exists already");
+				}
+				break;
+			case CommandCodec.DELETE:
+				if (guestList.remove(g)==false) {
+					throw new IllegalStateException("guest doesn't exist");
+				}
+				break;
+			default:
+				if (guestList.contains(g)==false) {
+					throw new IllegalStateException("guest doesn't exist");
+				}
+				guestList.setRSVP(g, flags[i]);
+			}
+		}
+		
+		private void revert (int i) {
+			Guest g=guests[i];
+			switch (kinds[i]) {
+			case CommandCodec.ADD:
+				guestList.remove(g);
+				break;
+			case CommandCodec.DELETE:
+				guestList.add(g);
+				break;
+			default:
+				guestList.setRSVP(g, !flags[i]);
+			}
+		}
 	}
 }
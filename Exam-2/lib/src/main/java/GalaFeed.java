@@ -0,0 +1,172 @@
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stream of the changes made to the guest list of a {@link Gala}, for
+ * readers that keep their own projection of it instead of polling the lists.
+ * <p>
+ * Every guest added, removed or moved between pending and confirmed is
+ * published once, whether by a command, a batch, an undo or a redo. A
+ * change that does not move a guest, like an RSVP repeating the current
+ * answer, is not published. Changes to one guest arrive in the order they
+ * were made.
+ * <p>
+ * Each subscriber has a buffer of a fixed size and receives changes as it
+ * requests them. When a buffer is full the command making the next change
+ * waits for the subscriber to catch up, so a slow subscriber slows the gala
+ * down but never misses a change. A subscriber sees the changes made after
+ * it subscribed; to build a projection, subscribe and then read the lists
+ * from the same thread that runs the commands.
+ * <p>
+ * The feed of a {@link ConcurrentGala} queues the changes while the gala's
+ * locks are held and publishes them once they are released, so a
+ * subscriber may read the gala from {@code onNext}, lists included, even
+ * while its buffer is full. It must not run commands on the gala from
+ * there: the command would wait for the changes before its own to be
+ * published, and those wait for the subscriber. Hand them to another
+ * thread instead. A plain {@link Gala} publishes from within the command,
+ * and is not to be read from the subscriber's thread at all.
+ */
+public final class GalaFeed implements Flow.Publisher<GalaFeed.Change>, AutoCloseable {
+	public enum Kind {
+		ADDED, REMOVED, CONFIRMED, PENDING
+	}
+
+	public static final class Change {
+		private final Kind kind;
+		private final Guest guest;
+
+		private Change(Kind kind, Guest guest) {
+			this.kind = kind;
+			this.guest = guest;
+		}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		public Guest getGuest() {
+			return guest;
+		}
+
+		@Override
+		public String toString() {
+			return "Change [kind=" + kind + ",guest=" + guest.getName() + "]";
+		}
+	}
+
+	private final SubmissionPublisher<Change> publisher;
+	private final Queue<Change> held;
+	private final ReentrantLock draining;
+
+	GalaFeed(int bufferSize) {
+		this(bufferSize, false);
+	}
+
+	/**
+	 * Feed that, if {@code hold}, queues changes until {@link #flush()}
+	 * rather than publishing them as they are made.
+	 */
+	GalaFeed(int bufferSize, boolean hold) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException("buffer size must be positive");
+		}
+		this.publisher = new SubmissionPublisher<>(executor(), bufferSize);
+		this.held = hold ? new ConcurrentLinkedQueue<>() : null;
+		this.draining = hold ? new ReentrantLock() : null;
+	}
+
+	/**
+	 * The common pool, as {@link SubmissionPublisher} uses by default, or a
+	 * thread per delivery when the pool is too small to run subscribers
+	 * next to the gala.
+	 */
+	private static Executor executor() {
+		if (ForkJoinPool.getCommonPoolParallelism() > 1) {
+			return ForkJoinPool.commonPool();
+		}
+		return r -> {
+			Thread t = new Thread(r, "gala-feed");
+			t.setDaemon(true);
+			t.start();
+		};
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super Change> subscriber) {
+		publisher.subscribe(subscriber);
+	}
+
+	public int getBufferSize() {
+		return publisher.getMaxBufferCapacity();
+	}
+
+	public int getSubscriberCount() {
+		return publisher.getNumberOfSubscribers();
+	}
+
+	/**
+	 * Completes every subscriber once it has received the changes already
+	 * published; later changes are not published.
+	 */
+	@Override
+	public void close() {
+		publisher.close();
+	}
+
+	boolean isClosed() {
+		return publisher.isClosed();
+	}
+
+	void added(Guest g) {
+		publish(Kind.ADDED, g);
+	}
+
+	void removed(Guest g) {
+		publish(Kind.REMOVED, g);
+	}
+
+	void moved(Guest g, boolean confirmed) {
+		publish(confirmed ? Kind.CONFIRMED : Kind.PENDING, g);
+	}
+
+	/**
+	 * Publishes the changes queued so far, waiting for full buffers; called
+	 * holding none of the gala's locks. One thread publishes at a time, in
+	 * the order the changes were queued, so changes to one guest keep their
+	 * order; a thread finding another publishing waits until it is done, and
+	 * with it its own changes.
+	 */
+	void flush() {
+		if (held == null || held.isEmpty()) {
+			return;
+		}
+		draining.lock();
+		try {
+			for (Change c; (c = held.poll()) != null;) {
+				if (publisher.isClosed() == false) {
+					publisher.submit(c);
+				}
+			}
+		}
+		finally {
+			draining.unlock();
+		}
+	}
+
+	private void publish(Kind kind, Guest g) {
+		if (publisher.isClosed() == false && publisher.hasSubscribers()) {
+			if (held != null) {
+				held.add(new Change(kind, g));
+			}
+			else {
+				publisher.submit(new Change(kind, g));
+			}
+		}
+	}
+}
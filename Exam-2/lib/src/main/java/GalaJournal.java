@@ -0,0 +1,666 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only binary journal of the commands executed, undone and redone on
+ * a {@link Gala}. Replaying the journal rebuilds the guest list and both the
+ * undo and redo stacks exactly.
+ * <p>
+ * Each record is framed as {@code [int length][int crc32][payload]}. The
+ * payload is one of {@code EXECUTE command}, {@code UNDO}, {@code REDO} or
+ * {@code SEGMENT generation}; commands are encoded by {@link CommandCodec}.
+ * <p>
+ * The journal writes behind the gala: records are appended to an in-memory
+ * buffer after the command has been applied. A background thread writes the
+ * buffer and forces it to disk as a group, either when half the buffer is
+ * taken, when the group commit interval has passed since the first pending
+ * record, or when {@link #sync()} asks for it. With
+ * {@link Durability#BUFFERED}, the default, execute, undo and redo return
+ * before their record is forced, so a crash loses the commands of at most
+ * one group: those of the last group commit interval (2 ms by default), or
+ * fewer if half a buffer (512 KiB) filled up first. With
+ * {@link Durability#SYNCED} they return only once the group holding their
+ * record is on disk, and a crash loses no command that has returned; a
+ * group then holds every record appended while the one before was forced.
+ * A record torn by a crash fails its checksum and is cut off on the next
+ * open.
+ * <p>
+ * Every so many records the journal takes a {@link GalaSnapshot} and starts
+ * a new segment. The thread running the command only freezes the state,
+ * which does not encode anything; a thread of its own encodes the snapshot,
+ * writes it to {@code <file>.snapshot} once the writer thread has renamed
+ * the old segment to {@code <file>.old}, and deletes the old segment. The
+ * new segment numbers its guests as the snapshot does, so records appended
+ * while the snapshot is encoded are held, with the RSVP flags of their
+ * guests, until that numbering is known. Opening the journal loads the
+ * snapshot and replays the current segment only, so recovery is bounded by
+ * the snapshot size and the snapshot interval. Each segment starts with the
+ * generation of the snapshot it follows, which tells a segment left over by
+ * a crash apart from one already folded into the snapshot.
+ */
+final class GalaJournal implements Closeable {
+	static final byte EXECUTE = 1;
+	static final byte UNDO = 2;
+	static final byte REDO = 3;
+	static final byte SEGMENT = 4;
+
+	private static final int BUFFER_BYTES = 1 << 20;
+	private static final long DEFAULT_INTERVAL_MILLIS = 2;
+	private static final long DEFAULT_SNAPSHOT_RECORDS = 1 << 20;
+
+	/**
+	 * When an execute, undo or redo on a journaled gala returns, relative
+	 * to its record reaching the disk.
+	 */
+	enum Durability {
+		/**
+		 * Once the record is buffered; a crash can lose the last group.
+		 */
+		BUFFERED,
+		/**
+		 * Once the group holding the record has been forced. If the write
+		 * fails, the command stays applied and an
+		 * {@link UncheckedIOException} is thrown.
+		 */
+		SYNCED
+	}
+
+	private final Path file;
+	private final Path oldFile;
+	private final Path snapshotFile;
+	private FileChannel channel;
+	private final Gala gala;
+	// null while a snapshot is encoded, when records wait in deferred
+	private CommandCodec codec;
+	private List<Deferred> deferred;
+	private final long intervalNanos;
+	private final long snapshotRecords;
+	private final Durability durability;
+	private final Object lock;
+	private final Thread flusher;
+	private Thread snapshotter;
+	private ByteBuffer active;
+	private ByteBuffer flushing;
+	private final CRC32 crc;
+	private long appended;
+	private long durable;
+	private long generation;
+	private long sinceSnapshot;
+	private int rotateAt;
+	private boolean rotated;
+	private boolean snapshotting;
+	private boolean syncRequested;
+	private boolean closed;
+	private IOException failure;
+
+	private GalaJournal(Path file, FileChannel channel, Gala gala, List<Guest> guests,
+			long generation, long intervalNanos, long snapshotRecords, Durability durability) {
+		this.file = file;
+		this.oldFile = sibling(file, ".old");
+		this.snapshotFile = sibling(file, ".snapshot");
+		this.channel = channel;
+		this.gala = gala;
+		this.codec = new CommandCodec(guests);
+		this.deferred = null;
+		this.intervalNanos = intervalNanos;
+		this.snapshotRecords = snapshotRecords;
+		this.durability = durability;
+		this.lock = new Object();
+		this.active = ByteBuffer.allocateDirect(BUFFER_BYTES);
+		this.flushing = ByteBuffer.allocateDirect(BUFFER_BYTES);
+		this.crc = new CRC32();
+		this.appended = 0;
+		this.durable = 0;
+		this.generation = generation;
+		this.sinceSnapshot = 0;
+		this.rotateAt = -1;
+		this.rotated = false;
+		this.snapshotting = false;
+		this.syncRequested = false;
+		this.closed = false;
+		this.failure = null;
+		this.flusher = new Thread(this::flushLoop, "gala-journal");
+		this.flusher.setDaemon(true);
+		this.snapshotter = null;
+	}
+
+	/**
+	 * Opens the journal in {@code file}, creating it if needed, recovers
+	 * the gala it holds and attaches the journal to that gala.
+	 */
+	public static GalaJournal open(Path file) throws IOException {
+		return open(file, DEFAULT_INTERVAL_MILLIS);
+	}
+
+	/**
+	 * As {@link #open(Path)}, forcing a group at most
+	 * {@code groupCommitMillis} after its first record was appended.
+	 */
+	public static GalaJournal open(Path file, long groupCommitMillis) throws IOException {
+		return open(file, groupCommitMillis, DEFAULT_SNAPSHOT_RECORDS);
+	}
+
+	/**
+	 * As {@link #open(Path, long)}, taking a snapshot after every
+	 * {@code snapshotRecords} records; 0 leaves it to {@link #snapshot()}.
+	 */
+	public static GalaJournal open(Path file, long groupCommitMillis, long snapshotRecords) throws IOException {
+		return open(file, groupCommitMillis, snapshotRecords, HistoryPolicy.unbounded());
+	}
+
+	/**
+	 * As {@link #open(Path, long, long)}, recovering a gala whose history
+	 * is bounded by {@code policy}. Depth and byte limits drop the same
+	 * commands on replay as they did originally; ages count from the replay.
+	 */
+	public static GalaJournal open(Path file, long groupCommitMillis, long snapshotRecords,
+			HistoryPolicy policy) throws IOException {
+		return open(file, groupCommitMillis, snapshotRecords, policy, Durability.BUFFERED);
+	}
+
+	/**
+	 * As {@link #open(Path, long, long, HistoryPolicy)}, returning from
+	 * the commands of the gala as {@code durability} says.
+	 */
+	public static GalaJournal open(Path file, long groupCommitMillis, long snapshotRecords,
+			HistoryPolicy policy, Durability durability) throws IOException {
+		if (durability == null) {
+			throw new IllegalArgumentException("Durability cannot be null");
+		}
+		if (groupCommitMillis < 0) {
+			throw new IllegalArgumentException("Group commit interval cannot be negative");
+		}
+		if (snapshotRecords < 0) {
+			throw new IllegalArgumentException("Snapshot interval cannot be negative");
+		}
+		Path oldFile = sibling(file, ".old");
+		Path snapshotFile = sibling(file, ".snapshot");
+		Files.deleteIfExists(sibling(snapshotFile, ".tmp"));
+
+		List<Guest> guests = new ArrayList<>();
+		Gala gala;
+		long generation;
+		if (Files.exists(snapshotFile)) {
+			GalaSnapshot snapshot = GalaSnapshot.read(snapshotFile);
+			gala = snapshot.restore(guests, policy);
+			generation = snapshot.generation();
+		}
+		else {
+			gala = new Gala(policy);
+			generation = 0;
+		}
+		if (Files.exists(oldFile)) {
+			// a crash came between starting a segment and its snapshot
+			try (FileChannel old = FileChannel.open(oldFile, StandardOpenOption.READ)) {
+				if (replay(old, gala, guests, generation) >= 0) {
+					GalaSnapshot snapshot = GalaSnapshot.capture(gala, ++generation);
+					snapshot.write(snapshotFile);
+					guests = snapshot.codec().guests();
+				}
+			}
+			Files.delete(oldFile);
+		}
+
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			long valid = replay(channel, gala, guests, generation);
+			if (valid < 0) {
+				throw new IOException("Journal does not follow its snapshot");
+			}
+			channel.truncate(valid);
+			channel.position(valid);
+			GalaJournal journal = new GalaJournal(file, channel, gala, guests,
+					generation, TimeUnit.MILLISECONDS.toNanos(groupCommitMillis), snapshotRecords, durability);
+			if (valid == 0) {
+				journal.segment();
+			}
+			gala.attach(journal);
+			journal.flusher.start();
+			return journal;
+		}
+		catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * The gala rebuilt from the journal; its commands are journaled.
+	 */
+	public Gala gala() {
+		return gala;
+	}
+
+	/**
+	 * Throws if {@code c} is not a command the journal can record.
+	 */
+	void check(Command c) {
+		if (!CommandCodec.supports(c)) {
+			throw new IllegalArgumentException("command cannot be journaled");
+		}
+	}
+
+	void executed(Command c) {
+		synchronized (lock) {
+			if (codec == null) {
+				defer(EXECUTE, c);
+			}
+			else {
+				codec.clear();
+				codec.put(EXECUTE);
+				codec.encode(c);
+				append();
+			}
+		}
+		recorded();
+	}
+
+	void undone() {
+		record(UNDO);
+		recorded();
+	}
+
+	void redone() {
+		record(REDO);
+		recorded();
+	}
+
+	private void recorded() {
+		if (durability == Durability.SYNCED) {
+			synchronized (lock) {
+				awaitDurable();
+				if (failure != null) {
+					throw new UncheckedIOException("journal write failed", failure);
+				}
+			}
+		}
+		if (snapshotRecords > 0 && ++sinceSnapshot >= snapshotRecords) {
+			snapshot();
+		}
+	}
+
+	/**
+	 * Blocks until every record appended so far has been forced to disk.
+	 */
+	public void sync() throws IOException {
+		synchronized (lock) {
+			awaitDurable();
+			if (failure != null) {
+				throw new IOException("journal write failed", failure);
+			}
+		}
+	}
+
+	/**
+	 * Asks for the pending records to be forced and waits until they are,
+	 * or the journal failed; called holding the lock.
+	 */
+	private void awaitDurable() {
+		long target = appended + (deferred == null ? 0 : deferred.size());
+		syncRequested = true;
+		lock.notifyAll();
+		while (durable < target && failure == null) {
+			waitForFlusher();
+		}
+	}
+
+	/**
+	 * Takes a snapshot of the gala and starts a new journal segment, unless
+	 * a snapshot is still being written; returns whether it did. Must be
+	 * called from the thread using the gala.
+	 */
+	public boolean snapshot() {
+		synchronized (lock) {
+			check();
+			if (snapshotting) {
+				return false;
+			}
+			snapshotting = true;
+		}
+		GalaSnapshot.Image image = GalaSnapshot.freeze(gala);
+		long next;
+		synchronized (lock) {
+			next = ++generation;
+			sinceSnapshot = 0;
+			rotateAt = active.position();
+			segment();
+			codec = null;
+			deferred = new ArrayList<>();
+		}
+		snapshotter = new Thread(() -> writeSnapshot(image, next), "gala-snapshot");
+		snapshotter.setDaemon(true);
+		snapshotter.start();
+		return true;
+	}
+
+	/**
+	 * Forces the pending records, waits for a snapshot being written, stops
+	 * the writer thread and detaches the journal from its gala.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			lock.notifyAll();
+		}
+		gala.attach(null);
+		try {
+			flusher.join();
+			if (snapshotter != null) {
+				snapshotter.join();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (failure != null) {
+			throw new IOException("journal write failed", failure);
+		}
+	}
+
+	private void record(byte type) {
+		synchronized (lock) {
+			if (codec == null) {
+				defer(type, null);
+			}
+			else {
+				codec.clear();
+				codec.put(type);
+				append();
+			}
+		}
+	}
+
+	/**
+	 * Holds a record until the snapshot being encoded gives its numbering;
+	 * called holding the lock.
+	 */
+	private void defer(byte type, Command c) {
+		check();
+		boolean[] flags = null;
+		if (c != null) {
+			flags = new boolean[CommandCodec.references(c)];
+			CommandCodec.flags(c, flags, 0);
+		}
+		deferred.add(new Deferred(type, c, flags));
+	}
+
+	private void segment() {
+		codec.clear();
+		codec.put(SEGMENT);
+		codec.putLong(generation);
+		append();
+	}
+
+	private void check() {
+		if (failure != null) {
+			throw new UncheckedIOException("journal write failed", failure);
+		}
+		if (closed) {
+			throw new IllegalStateException("journal is closed");
+		}
+	}
+
+	/**
+	 * Frames the payload in the codec into the active buffer; called
+	 * holding the lock.
+	 */
+	private void append() {
+		check();
+		frame();
+	}
+
+	private void frame() {
+		ByteBuffer payload = codec.flip();
+		int length = payload.remaining();
+		crc.reset();
+		crc.update(payload.array(), 0, length);
+		int frame = length + 8;
+		if (frame > active.capacity()) {
+			while (active.position() > 0 && failure == null) {
+				lock.notifyAll();
+				waitForFlusher();
+			}
+			active = ByteBuffer.allocateDirect(frame);
+		}
+		while (active.remaining() < frame && failure == null) {
+			lock.notifyAll();
+			waitForFlusher();
+		}
+		if (failure != null) {
+			throw new UncheckedIOException("journal write failed", failure);
+		}
+		active.putInt(length).putInt((int) crc.getValue()).put(payload);
+		appended++;
+		if (active.position() >= active.capacity() / 2) {
+			lock.notifyAll();
+		}
+	}
+
+	private void waitForFlusher() {
+		try {
+			lock.wait();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("interrupted waiting for the journal", e);
+		}
+	}
+
+	private void flushLoop() {
+		try {
+			while (true) {
+				ByteBuffer toWrite;
+				long target;
+				int rotate;
+				synchronized (lock) {
+					// a closed journal still writes the records a snapshot holds back
+					while (active.position() == 0 && (!closed || (deferred != null && failure == null))) {
+						lock.wait();
+					}
+					if (active.position() == 0) {
+						return;
+					}
+					// give other appends up to the interval to join this group
+					long deadline = System.nanoTime() + intervalNanos;
+					long remaining = intervalNanos;
+					while (!closed && !syncRequested && rotateAt < 0 && remaining > 0
+							&& active.position() < active.capacity() / 2) {
+						TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+						remaining = deadline - System.nanoTime();
+					}
+					toWrite = active;
+					active = flushing.capacity() >= BUFFER_BYTES ? flushing : ByteBuffer.allocateDirect(BUFFER_BYTES);
+					flushing = toWrite;
+					target = appended;
+					rotate = rotateAt;
+					rotateAt = -1;
+					syncRequested = false;
+					lock.notifyAll();
+				}
+				toWrite.flip();
+				if (rotate >= 0) {
+					write(toWrite.duplicate().limit(rotate));
+					channel.close();
+					// the rename has to be durable before the new segment is,
+					// or a crash could leave a segment that follows no snapshot
+					Files.move(file, oldFile, StandardCopyOption.ATOMIC_MOVE);
+					GalaSnapshot.syncDirectory(file);
+					channel = FileChannel.open(file, StandardOpenOption.CREATE,
+							StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+					GalaSnapshot.syncDirectory(file);
+					toWrite.position(rotate);
+					synchronized (lock) {
+						rotated = true;
+						lock.notifyAll();
+					}
+				}
+				write(toWrite);
+				toWrite.clear();
+				synchronized (lock) {
+					durable = target;
+					lock.notifyAll();
+				}
+			}
+		}
+		catch (IOException e) {
+			fail(e);
+		}
+		catch (InterruptedException e) {
+			fail(new InterruptedIOException("journal writer interrupted"));
+		}
+	}
+
+	private void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		channel.force(false);
+	}
+
+	/**
+	 * Encodes the snapshot, appends the records held back meanwhile, waits
+	 * for the writer thread to start the new segment, then writes the
+	 * snapshot and drops the old segment.
+	 */
+	private void writeSnapshot(GalaSnapshot.Image image, long generation) {
+		try {
+			GalaSnapshot snapshot = image.encode(generation);
+			synchronized (lock) {
+				codec = snapshot.codec();
+				for (Deferred d : deferred) {
+					codec.clear();
+					codec.put(d.type);
+					if (d.command != null) {
+						codec.encode(d.command, d.flags, 0);
+					}
+					frame();
+				}
+				deferred = null;
+				lock.notifyAll();
+				while (!rotated && failure == null) {
+					lock.wait();
+				}
+				if (failure != null) {
+					return;
+				}
+				rotated = false;
+			}
+			snapshot.write(snapshotFile);
+			Files.delete(oldFile);
+			synchronized (lock) {
+				snapshotting = false;
+			}
+		}
+		catch (IOException e) {
+			fail(e);
+		}
+		catch (InterruptedException e) {
+			fail(new InterruptedIOException("snapshot writer interrupted"));
+		}
+		catch (RuntimeException e) {
+			fail(new IOException("snapshot failed", e));
+		}
+	}
+
+	private void fail(IOException e) {
+		synchronized (lock) {
+			if (failure == null) {
+				failure = e;
+			}
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Applies every intact record of {@code channel} to {@code gala}, filling
+	 * {@code guests} with the guests by journal id; returns the length of
+	 * the intact prefix, or -1 if the segment follows another generation
+	 * than {@code generation}.
+	 */
+	private static long replay(FileChannel channel, Gala gala, List<Guest> guests, long generation) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+		CRC32 crc = new CRC32();
+		long valid = 0;
+		long size = channel.size();
+		while (valid + 8 <= size) {
+			int length = in.readInt();
+			int checksum = in.readInt();
+			if (length <= 0 || length > size - valid - 8) {
+				break;
+			}
+			byte[] payload = new byte[length];
+			in.readFully(payload);
+			crc.reset();
+			crc.update(payload);
+			if ((int) crc.getValue() != checksum) {
+				break;
+			}
+			ByteBuffer record = ByteBuffer.wrap(payload);
+			try {
+				if (record.get(0) == SEGMENT) {
+					if (valid != 0) {
+						throw new IllegalStateException("segment record inside a segment");
+					}
+					if (record.getLong(1) != generation) {
+						return -1;
+					}
+				}
+				else {
+					apply(record, gala, guests);
+				}
+			}
+			catch (RuntimeException e) {
+				throw new IOException("Corrupt journal record at offset " + valid, e);
+			}
+			valid += 8 + length;
+		}
+		return valid;
+	}
+
+	private static void apply(ByteBuffer in, Gala gala, List<Guest> guests) {
+		switch (in.get()) {
+		case EXECUTE:
+			gala.execute(CommandCodec.decode(in, gala, guests));
+			break;
+		case UNDO:
+			gala.undo();
+			break;
+		case REDO:
+			gala.redo();
+			break;
+		default:
+			throw new IllegalStateException("unknown record type");
+		}
+	}
+
+	private static Path sibling(Path file, String suffix) {
+		return file.resolveSibling(file.getFileName() + suffix);
+	}
+
+	/**
+	 * Record appended while a snapshot was encoded, with the RSVP flags its
+	 * guests had then.
+	 */
+	private static final class Deferred {
+		private final byte type;
+		private final Command command;
+		private final boolean[] flags;
+
+		private Deferred(byte type, Command command, boolean[] flags) {
+			this.type = type;
+			this.command = command;
+			this.flags = flags;
+		}
+	}
+}
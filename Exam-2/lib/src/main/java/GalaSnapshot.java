@@ -0,0 +1,233 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Point-in-time image of a {@link Gala}: its guests in order with their
+ * partition and RSVP flag, and both history stacks.
+ * <p>
+ * The file is {@code [int magic][int version][long generation][int length]
+ * [int crc32][body]}. The body lists the guests, each as a
+ * {@link CommandCodec} guest reference and its partition, then the undo and
+ * redo stacks from the bottom, each as a count and its encoded commands.
+ * Guests are numbered from scratch in that order, so a snapshot only holds
+ * guests the gala can still reach.
+ * <p>
+ * {@link #freeze} takes an {@link Image} of the state on the thread using
+ * the gala: a version of the guest registry, which is O(1), and copies of
+ * both history stacks with the RSVP flags their guests have at the time.
+ * {@link Image#encode} and {@link #write} can then run on any thread while
+ * the gala moves on.
+ */
+final class GalaSnapshot {
+	private static final int MAGIC = 0x47414C53; // "GALS"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 24;
+
+	private final long generation;
+	private final ByteBuffer body;
+	private final CommandCodec codec;
+
+	private GalaSnapshot(long generation, ByteBuffer body, CommandCodec codec) {
+		this.generation = generation;
+		this.body = body;
+		this.codec = codec;
+	}
+
+	/**
+	 * Encodes the current state of {@code gala}.
+	 */
+	static GalaSnapshot capture(Gala gala, long generation) {
+		return freeze(gala).encode(generation);
+	}
+
+	/**
+	 * Image of the current state of {@code gala}, to be encoded later; must
+	 * be called from the thread using the gala.
+	 */
+	static Image freeze(Gala gala) {
+		CommandHistory history = gala.undoHistory();
+		Command[] undo = new Command[history.getSize()];
+		for (int i = 0; i < undo.length; i++) {
+			undo[i] = history.get(i);
+		}
+		IStack<Command> stack = gala.redoStack();
+		Command[] redo = new Command[stack.getSize()];
+		for (int i = 0; i < redo.length; i++) {
+			redo[i] = stack.get(i);
+		}
+		return new Image(gala.registry().version(), undo, flags(undo), redo, flags(redo));
+	}
+
+	private static boolean[] flags(Command[] commands) {
+		int n = 0;
+		for (Command c : commands) {
+			n += CommandCodec.references(c);
+		}
+		boolean[] flags = new boolean[n];
+		int at = 0;
+		for (Command c : commands) {
+			at = CommandCodec.flags(c, flags, at);
+		}
+		return flags;
+	}
+
+	/**
+	 * State of a gala frozen by {@link #freeze}. The guests of the registry
+	 * are encoded with their partition as their RSVP flag, the others with
+	 * the flag they had when frozen, so later changes to the gala do not
+	 * show in the snapshot.
+	 */
+	static final class Image {
+		private final GuestRegistry.Version guests;
+		private final Command[] undo;
+		private final boolean[] undoFlags;
+		private final Command[] redo;
+		private final boolean[] redoFlags;
+
+		private Image(GuestRegistry.Version guests, Command[] undo, boolean[] undoFlags,
+				Command[] redo, boolean[] redoFlags) {
+			this.guests = guests;
+			this.undo = undo;
+			this.undoFlags = undoFlags;
+			this.redo = redo;
+			this.redoFlags = redoFlags;
+		}
+
+		GalaSnapshot encode(long generation) {
+			CommandCodec codec = new CommandCodec(guests.size() + undo.length + redo.length);
+			codec.putInt(guests.size());
+			guests.forEach((g, confirmed) -> {
+				codec.encode(g, confirmed);
+				codec.put(confirmed ? (byte) 1 : 0);
+			});
+			encode(undo, undoFlags, codec);
+			encode(redo, redoFlags, codec);
+			ByteBuffer encoded = codec.flip();
+			ByteBuffer body = ByteBuffer.allocate(encoded.remaining()).put(encoded).flip();
+			codec.clear();
+			return new GalaSnapshot(generation, body, codec);
+		}
+
+		private static void encode(Command[] commands, boolean[] flags, CommandCodec codec) {
+			codec.putInt(commands.length);
+			int at = 0;
+			for (Command c : commands) {
+				at = codec.encode(c, flags, at);
+			}
+		}
+	}
+
+	long generation() {
+		return generation;
+	}
+
+	/**
+	 * The codec holding the numbering of a captured snapshot, for the
+	 * journal segment following it; {@code null} once read back.
+	 */
+	CommandCodec codec() {
+		return codec;
+	}
+
+	/**
+	 * Writes the snapshot next to {@code file} and moves it into place once
+	 * it is on disk, so {@code file} always holds a whole snapshot.
+	 */
+	void write(Path file) throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		CRC32 crc = new CRC32();
+		crc.update(body.duplicate());
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+				.putInt(MAGIC).putInt(VERSION).putLong(generation)
+				.putInt(body.remaining()).putInt((int) crc.getValue()).flip();
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer[] parts = { header, body.duplicate() };
+			while (parts[1].hasRemaining()) {
+				channel.write(parts);
+			}
+			channel.force(true);
+		}
+		Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		syncDirectory(file);
+	}
+
+	static GalaSnapshot read(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			while (header.hasRemaining() && channel.read(header) >= 0) {
+			}
+			header.flip();
+			if (header.remaining() < HEADER_BYTES || header.getInt(0) != MAGIC) {
+				throw new IOException("Not a gala snapshot");
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new IOException("Unsupported snapshot version [" + header.getInt(4) + "]");
+			}
+			int length = header.getInt(16);
+			if (length < 0 || length != channel.size() - HEADER_BYTES) {
+				throw new IOException("Truncated gala snapshot");
+			}
+			ByteBuffer body = ByteBuffer.allocate(length);
+			while (body.hasRemaining() && channel.read(body) >= 0) {
+			}
+			body.flip();
+			CRC32 crc = new CRC32();
+			crc.update(body.duplicate());
+			if ((int) crc.getValue() != header.getInt(20)) {
+				throw new IOException("Corrupt gala snapshot");
+			}
+			return new GalaSnapshot(header.getLong(8), body, null);
+		}
+	}
+
+	/**
+	 * Rebuilds the gala with the given history policy, filling
+	 * {@code guests} with its guests by id.
+	 */
+	Gala restore(List<Guest> guests, HistoryPolicy policy) throws IOException {
+		ByteBuffer in = body.duplicate();
+		Gala gala = new Gala(policy);
+		try {
+			GuestRegistry registry = gala.registry();
+			int size = in.getInt();
+			for (int i = 0; i < size; i++) {
+				Guest g = CommandCodec.decodeGuest(in, guests);
+				boolean rsvp = g.hasRSVP();
+				// the registry files a guest by its flag when added
+				g.setRSVP(in.get() == 1);
+				registry.add(g);
+				g.setRSVP(rsvp);
+			}
+			size = in.getInt();
+			for (int i = 0; i < size; i++) {
+				gala.undoHistory().push(CommandCodec.decode(in, gala, guests));
+			}
+			size = in.getInt();
+			for (int i = 0; i < size; i++) {
+				gala.redoStack().push(CommandCodec.decode(in, gala, guests));
+			}
+		}
+		catch (RuntimeException e) {
+			throw new IOException("Corrupt gala snapshot", e);
+		}
+		return gala;
+	}
+
+	/**
+	 * Forces the directory entry of {@code file}, where the platform allows it.
+	 */
+	static void syncDirectory(Path file) {
+		Path dir = file.toAbsolutePath().getParent();
+		try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+			channel.force(true);
+		}
+		catch (IOException e) {
+			// not every platform can open a directory; the rename still stands
+		}
+	}
+}
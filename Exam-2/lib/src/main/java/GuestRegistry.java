@@ -0,0 +1,831 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+
+/**
+ * Insertion ordered set of guests with constant time membership and removal.
+ * Guests are appended to a slot array and looked up through a hash index of
+ * their slot; removing a guest only clears its slot. Holes are squeezed out
+ * once they outnumber the live guests, so every operation stays amortized O(1).
+ * The index is an open addressed table of slot numbers probed linearly with
+ * the guests' cached hashes: about 8 to 16 bytes a guest where a HashMap took
+ * a node and a boxed slot, and no allocation when looking a guest up.
+ * <p>
+ * The registry also partitions its guests into pending and confirmed sets,
+ * kept as bitsets over the slots (plain word arrays: {@link BitSet#clear}
+ * rescans for the highest word in use, which made flipping a bit O(n/64)).
+ * A guest's partition follows the RSVP flag it had when added and every
+ * later {@link #setRSVP} call; flipping the flag on the {@link Guest}
+ * directly is not seen by the registry.
+ * <p>
+ * Slots and bits are split into chunks of 1024 slots under a directory, so
+ * that {@link #version()} can freeze the registry in O(1): the version keeps
+ * the directory, and the registry copies a chunk, and the directory, the
+ * first time it writes to them afterwards. Reading the lists of a version
+ * never copies anything, and neither do writes while no version is held.
+ */
+final class GuestRegistry implements Iterable<Guest> {
+	private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+	private static final int CHUNK_BITS = 10;
+	private static final int CHUNK = 1 << CHUNK_BITS;
+
+	private Chunk[] chunks;
+	private int end;
+	private int size;
+	// slot + 1 of every guest, 0 for a free cell; at most half full
+	private int[] index;
+	private int confirmedCount;
+	// chunks and a directory made before the current epoch belong to a version
+	private long epoch;
+	private long directoryEpoch;
+	private Version latest;
+	private GalaFeed feed;
+	private GuestSearch search;
+
+	public GuestRegistry() {
+		this.chunks = new Chunk[] { new Chunk(0) };
+		this.end = 0;
+		this.size = 0;
+		this.index = new int[32];
+		this.confirmedCount = 0;
+		this.epoch = 0;
+		this.directoryEpoch = 0;
+		this.latest = null;
+		this.feed = null;
+		this.search = null;
+	}
+
+	public boolean contains(Guest g) {
+		return index[find(g)] != 0;
+	}
+
+	/**
+	 * Returns the guest instance stored in the registry that is equal to
+	 * {@code g}, or {@code null} if there is none.
+	 */
+	public Guest get(Guest g) {
+		int slot = index[find(g)] - 1;
+		return slot < 0 ? null : guest(chunks, slot);
+	}
+
+	public boolean add(Guest g) {
+		if (end == capacity()) {
+			grow();
+		}
+		int cell = find(g);
+		if (index[cell] != 0) {
+			return false;
+		}
+		if (2 * (size + 1) > index.length) {
+			rehash(index.length * 2);
+			cell = find(g);
+		}
+		index[cell] = end + 1;
+		Chunk c = own(end >>> CHUNK_BITS);
+		int i = end & (CHUNK - 1);
+		c.guests[i] = g;
+		if (g.hasRSVP()) {
+			set(c.confirmed, i);
+			confirmedCount++;
+		}
+		else {
+			set(c.pending, i);
+		}
+		end++;
+		size++;
+		if (search != null) {
+			search.added(g);
+		}
+		if (feed != null) {
+			feed.added(g);
+		}
+		return true;
+	}
+
+	/**
+	 * Makes room for {@code extra} more guests at once, so adding them does
+	 * not grow the slots and the hash index step by step.
+	 */
+	public void reserve(int extra) {
+		int need = (int) (((long) end + extra + CHUNK - 1) >>> CHUNK_BITS);
+		if (need > chunks.length) {
+			int count = chunks.length;
+			chunks = Arrays.copyOf(chunks, need);
+			directoryEpoch = epoch;
+			for (int i = count; i < need; i++) {
+				chunks[i] = new Chunk(epoch);
+			}
+		}
+		long entries = (long) size + extra;
+		if (2 * entries > index.length) {
+			int length = index.length;
+			while (2 * entries > length && length < 1 << 30) {
+				length *= 2;
+			}
+			rehash(length);
+		}
+	}
+
+	public boolean remove(Guest g) {
+		int cell = find(g);
+		int slot = index[cell] - 1;
+		if (slot < 0) {
+			return false;
+		}
+		delete(cell);
+		Chunk c = own(slot >>> CHUNK_BITS);
+		int i = slot & (CHUNK - 1);
+		Guest removed = c.guests[i];
+		c.guests[i] = null;
+		size--;
+		if (get(c.confirmed, i)) {
+			clear(c.confirmed, i);
+			confirmedCount--;
+		}
+		else {
+			clear(c.pending, i);
+		}
+		if (slot == end - 1) {
+			end--;
+		}
+		if (search != null) {
+			search.removed(removed);
+		}
+		if (feed != null) {
+			feed.removed(removed);
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the RSVP flag of {@code g} and, when {@code g} is the instance held
+	 * by the registry, moves it to the matching partition.
+	 */
+	public void setRSVP(Guest g, boolean rsvp) {
+		g.setRSVP(rsvp);
+		int slot = index[find(g)] - 1;
+		if (slot < 0) {
+			return;
+		}
+		Chunk c = chunks[slot >>> CHUNK_BITS];
+		int i = slot & (CHUNK - 1);
+		if (c.guests[i] != g || get(c.confirmed, i) == rsvp) {
+			return;
+		}
+		c = own(slot >>> CHUNK_BITS);
+		if (rsvp) {
+			clear(c.pending, i);
+			set(c.confirmed, i);
+			confirmedCount++;
+		}
+		else {
+			clear(c.confirmed, i);
+			set(c.pending, i);
+			confirmedCount--;
+		}
+		if (feed != null) {
+			feed.moved(g, rsvp);
+		}
+	}
+
+	/**
+	 * Slot holding the guest equal to {@code g}, or -1.
+	 */
+	int slotOf(Guest g) {
+		return index[find(g)] - 1;
+	}
+
+	/**
+	 * Whether {@link #setRSVPShared} may write to {@code slot}: false while
+	 * its chunk still belongs to a version, as it has to be copied first.
+	 */
+	boolean writable(int slot) {
+		return chunks[slot >>> CHUNK_BITS].epoch == epoch;
+	}
+
+	/**
+	 * As {@link #setRSVP(Guest, boolean)} for a guest found at a
+	 * {@link #writable} {@code slot}, safe to call for different guests from
+	 * several threads while the structure does not change: the bits are
+	 * flipped atomically, and the confirmed count is left alone and the
+	 * change returned instead.
+	 */
+	int setRSVPShared(Guest g, int slot, boolean rsvp) {
+		g.setRSVP(rsvp);
+		Chunk c = chunks[slot >>> CHUNK_BITS];
+		int i = slot & (CHUNK - 1);
+		if (c.guests[i] != g) {
+			return 0;
+		}
+		int w = i >>> 6;
+		long bit = 1L << i;
+		if (rsvp) {
+			if (((long) WORDS.getAndBitwiseOr(c.confirmed, w, bit) & bit) != 0) {
+				return 0;
+			}
+			WORDS.getAndBitwiseAnd(c.pending, w, ~bit);
+			if (feed != null) {
+				feed.moved(g, true);
+			}
+			return 1;
+		}
+		if (((long) WORDS.getAndBitwiseAnd(c.confirmed, w, ~bit) & bit) == 0) {
+			return 0;
+		}
+		WORDS.getAndBitwiseOr(c.pending, w, bit);
+		if (feed != null) {
+			feed.moved(g, false);
+		}
+		return -1;
+	}
+
+	/**
+	 * Publishes every later change of the guests to {@code f}.
+	 */
+	void feed(GalaFeed f) {
+		this.feed = f;
+	}
+
+	/**
+	 * Keeps {@code s} up to date with every later guest added or removed.
+	 */
+	void search(GuestSearch s) {
+		this.search = s;
+	}
+
+	/**
+	 * Folds changes returned by {@link #setRSVPShared} into the confirmed
+	 * count.
+	 */
+	void addConfirmed(int delta) {
+		confirmedCount += delta;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int pendingCount() {
+		return size - confirmedCount;
+	}
+
+	public int confirmedCount() {
+		return confirmedCount;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * The guests as they are now; later changes to the registry do not show
+	 * in it. Taking a version is O(1), and so is taking it again while the
+	 * registry has not changed.
+	 */
+	Version version() {
+		if (latest == null) {
+			latest = new Version(chunks, end, size, confirmedCount);
+			epoch++;
+		}
+		return latest;
+	}
+
+	public List<Guest> toList() {
+		return version().guests();
+	}
+
+	public List<Guest> pending() {
+		return version().pending();
+	}
+
+	public List<Guest> confirmed() {
+		return version().confirmed();
+	}
+
+	/**
+	 * Live, unmodifiable view of the pending guests in insertion order.
+	 */
+	public Collection<Guest> pendingView() {
+		return new PartitionView(false);
+	}
+
+	/**
+	 * Live, unmodifiable view of the confirmed guests in insertion order.
+	 */
+	public Collection<Guest> confirmedView() {
+		return new PartitionView(true);
+	}
+
+	/**
+	 * Calls {@code v} for every guest in order with the partition it is in.
+	 */
+	void forEach(PartitionVisitor v) {
+		for (int i = 0; i < end; i++) {
+			Chunk c = chunks[i >>> CHUNK_BITS];
+			Guest g = c.guests[i & (CHUNK - 1)];
+			if (g != null) {
+				v.guest(g, get(c.confirmed, i & (CHUNK - 1)));
+			}
+		}
+	}
+
+	interface PartitionVisitor {
+		void guest(Guest g, boolean confirmed);
+	}
+
+	@Override
+	public Iterator<Guest> iterator() {
+		return new Iterator<>() {
+			private int next = skip(0);
+
+			private int skip(int i) {
+				while (i < end && guest(chunks, i) == null) {
+					i++;
+				}
+				return i;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next < end;
+			}
+
+			@Override
+			public Guest next() {
+				if (next >= end) {
+					throw new NoSuchElementException();
+				}
+				Guest g = guest(chunks, next);
+				next = skip(next + 1);
+				return g;
+			}
+		};
+	}
+
+	private int capacity() {
+		return chunks.length << CHUNK_BITS;
+	}
+
+	/**
+	 * Chunk {@code c} made safe to write to, copying it and the directory
+	 * if a version still holds them.
+	 */
+	private Chunk own(int c) {
+		latest = null;
+		Chunk chunk = chunks[c];
+		if (chunk.epoch != epoch) {
+			if (directoryEpoch != epoch) {
+				chunks = chunks.clone();
+				directoryEpoch = epoch;
+			}
+			chunk = new Chunk(chunk, epoch);
+			chunks[c] = chunk;
+		}
+		return chunk;
+	}
+
+	private final class PartitionView extends AbstractCollection<Guest> {
+		private final boolean rsvp;
+
+		private PartitionView(boolean rsvp) {
+			this.rsvp = rsvp;
+		}
+
+		@Override
+		public int size() {
+			return rsvp ? confirmedCount() : pendingCount();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			int slot = o instanceof Guest g ? index[find(g)] - 1 : -1;
+			if (slot < 0) {
+				return false;
+			}
+			Chunk c = chunks[slot >>> CHUNK_BITS];
+			return get(rsvp ? c.confirmed : c.pending, slot & (CHUNK - 1));
+		}
+
+		@Override
+		public Iterator<Guest> iterator() {
+			return new Iterator<>() {
+				private int next = nextSetBit(chunks, end, rsvp, 0);
+
+				@Override
+				public boolean hasNext() {
+					return next >= 0;
+				}
+
+				@Override
+				public Guest next() {
+					if (next < 0) {
+						throw new NoSuchElementException();
+					}
+					Guest g = guest(chunks, next);
+					next = nextSetBit(chunks, end, rsvp, next + 1);
+					return g;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Makes room for one more slot, either by compacting when at least half
+	 * the slots are holes or by adding a chunk.
+	 */
+	private void grow() {
+		if (size <= end / 2) {
+			int j = 0;
+			for (int i = 0; i < end; i++) {
+				Guest g = guest(chunks, i);
+				if (g != null) {
+					if (i != j) {
+						int cell = find(g);
+						Chunk from = own(i >>> CHUNK_BITS);
+						Chunk to = own(j >>> CHUNK_BITS);
+						int f = i & (CHUNK - 1);
+						int t = j & (CHUNK - 1);
+						to.guests[t] = g;
+						from.guests[f] = null;
+						index[cell] = j + 1;
+						move(from.pending, f, to.pending, t);
+						move(from.confirmed, f, to.confirmed, t);
+					}
+					j++;
+				}
+			}
+			end = j;
+		}
+		if (end == capacity()) {
+			chunks = Arrays.copyOf(chunks, chunks.length + 1);
+			directoryEpoch = epoch;
+			chunks[chunks.length - 1] = new Chunk(epoch);
+		}
+	}
+
+	/**
+	 * Cell of the index holding the slot of the guest equal to {@code g}, or
+	 * the free cell where it would go.
+	 */
+	private int find(Guest g) {
+		int mask = index.length - 1;
+		int cell = spread(g.hashCode()) & mask;
+		while (true) {
+			int slot = index[cell];
+			if (slot == 0 || guest(chunks, slot - 1).equals(g)) {
+				return cell;
+			}
+			cell = (cell + 1) & mask;
+		}
+	}
+
+	/**
+	 * Frees {@code cell}, moving back later guests of its probe run that
+	 * could no longer be found past the hole.
+	 */
+	private void delete(int cell) {
+		int mask = index.length - 1;
+		int next = cell;
+		while (true) {
+			next = (next + 1) & mask;
+			int slot = index[next];
+			if (slot == 0) {
+				break;
+			}
+			int home = spread(guest(chunks, slot - 1).hashCode()) & mask;
+			// distance from home to next is at least that from home to the hole
+			if (((next - home) & mask) >= ((next - cell) & mask)) {
+				index[cell] = slot;
+				cell = next;
+			}
+		}
+		index[cell] = 0;
+	}
+
+	private void rehash(int length) {
+		int[] old = index;
+		index = new int[length];
+		int mask = length - 1;
+		for (int slot : old) {
+			if (slot != 0) {
+				int cell = spread(guest(chunks, slot - 1).hashCode()) & mask;
+				while (index[cell] != 0) {
+					cell = (cell + 1) & mask;
+				}
+				index[cell] = slot;
+			}
+		}
+	}
+
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static Guest guest(Chunk[] chunks, int slot) {
+		return chunks[slot >>> CHUNK_BITS].guests[slot & (CHUNK - 1)];
+	}
+
+	/**
+	 * First slot at or after {@code from} below {@code end} in the confirmed
+	 * or pending partition, or -1.
+	 */
+	private static int nextSetBit(Chunk[] chunks, int end, boolean confirmed, int from) {
+		while (from < end) {
+			Chunk c = chunks[from >>> CHUNK_BITS];
+			long[] bits = confirmed ? c.confirmed : c.pending;
+			int w = (from & (CHUNK - 1)) >>> 6;
+			long word = bits[w] & (-1L << from);
+			while (word == 0 && ++w < bits.length) {
+				word = bits[w];
+			}
+			if (word != 0) {
+				int i = (from & -CHUNK) + (w << 6) + Long.numberOfTrailingZeros(word);
+				return i < end ? i : -1;
+			}
+			from = (from & -CHUNK) + CHUNK;
+		}
+		return -1;
+	}
+
+	private static boolean get(long[] bits, int i) {
+		return (bits[i >>> 6] & (1L << i)) != 0;
+	}
+
+	private static void set(long[] bits, int i) {
+		bits[i >>> 6] |= 1L << i;
+	}
+
+	private static void clear(long[] bits, int i) {
+		bits[i >>> 6] &= ~(1L << i);
+	}
+
+	private static void move(long[] from, int f, long[] to, int t) {
+		if (get(from, f)) {
+			set(to, t);
+		}
+		else {
+			clear(to, t);
+		}
+		clear(from, f);
+	}
+
+	/**
+	 * 1024 slots with their partition bits, written to only by the registry
+	 * that made it in the epoch it was made in.
+	 */
+	private static final class Chunk {
+		private final Guest[] guests;
+		private final long[] pending;
+		private final long[] confirmed;
+		private final long epoch;
+
+		private Chunk(long epoch) {
+			this.guests = new Guest[CHUNK];
+			this.pending = new long[CHUNK >>> 6];
+			this.confirmed = new long[CHUNK >>> 6];
+			this.epoch = epoch;
+		}
+
+		private Chunk(Chunk c, long epoch) {
+			this.guests = c.guests.clone();
+			this.pending = c.pending.clone();
+			this.confirmed = c.confirmed.clone();
+			this.epoch = epoch;
+		}
+	}
+
+	/**
+	 * Frozen state of a registry. Its lists are handed out as they are and
+	 * stay consistent however the registry changes; a caller changing one
+	 * gets its own copy at that point, so callers can neither see nor make
+	 * changes through each other's lists.
+	 */
+	static final class Version {
+		private final Chunk[] chunks;
+		private final int end;
+		private final int size;
+		private final int confirmedCount;
+		// per list kind, the number of its guests before each chunk; made on
+		// the first indexed read
+		private volatile int[][] starts;
+
+		private Version(Chunk[] chunks, int end, int size, int confirmedCount) {
+			this.chunks = chunks;
+			this.end = end;
+			this.size = size;
+			this.confirmedCount = confirmedCount;
+			this.starts = null;
+		}
+
+		List<Guest> guests() {
+			return new VersionList(this, 0, size);
+		}
+
+		List<Guest> pending() {
+			return new VersionList(this, 1, size - confirmedCount);
+		}
+
+		List<Guest> confirmed() {
+			return new VersionList(this, 2, confirmedCount);
+		}
+
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Visits the guests in order with their partition, as
+		 * {@link GuestRegistry#forEach} did when the version was taken.
+		 */
+		void forEach(PartitionVisitor v) {
+			for (int i = 0; i < end; i++) {
+				Chunk c = chunks[i >>> CHUNK_BITS];
+				Guest g = c.guests[i & (CHUNK - 1)];
+				if (g != null) {
+					v.guest(g, get(c.confirmed, i & (CHUNK - 1)));
+				}
+			}
+		}
+
+		/**
+		 * Guest {@code i} of the list {@code kind}: a chunk found by binary
+		 * search over the guests before each chunk, then a rank over the
+		 * partition bits of that chunk. Without holes, the guests are the
+		 * slots themselves.
+		 */
+		private Guest guestAt(int kind, int i) {
+			if (kind == 0 && size == end) {
+				return guest(chunks, i);
+			}
+			int[] before = starts()[kind];
+			int lo = 0;
+			int hi = before.length - 1;
+			while (lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+				if (before[mid] <= i) {
+					lo = mid;
+				}
+				else {
+					hi = mid - 1;
+				}
+			}
+			Chunk c = chunks[lo];
+			int k = i - before[lo];
+			for (int w = 0; ; w++) {
+				long word = kind == 1 ? c.pending[w] : kind == 2 ? c.confirmed[w] : c.pending[w] | c.confirmed[w];
+				int n = Long.bitCount(word);
+				if (k < n) {
+					for (; k > 0; k--) {
+						word &= word - 1;
+					}
+					return c.guests[(w << 6) + Long.numberOfTrailingZeros(word)];
+				}
+				k -= n;
+			}
+		}
+
+		private int[][] starts() {
+			int[][] s = starts;
+			if (s == null) {
+				int used = (end + CHUNK - 1) >>> CHUNK_BITS;
+				s = new int[3][used];
+				int pending = 0;
+				int confirmed = 0;
+				for (int c = 0; c < used; c++) {
+					s[0][c] = pending + confirmed;
+					s[1][c] = pending;
+					s[2][c] = confirmed;
+					for (int w = 0; w < CHUNK >>> 6; w++) {
+						pending += Long.bitCount(chunks[c].pending[w]);
+						confirmed += Long.bitCount(chunks[c].confirmed[w]);
+					}
+				}
+				starts = s;
+			}
+			return s;
+		}
+
+		/**
+		 * First slot at or after {@code from} holding a guest of the list
+		 * {@code kind}, or -1.
+		 */
+		private int next(int kind, int from) {
+			if (kind != 0) {
+				return nextSetBit(chunks, end, kind == 2, from);
+			}
+			while (from < end && guest(chunks, from) == null) {
+				from++;
+			}
+			return from < end ? from : -1;
+		}
+	}
+
+	/**
+	 * List over a {@link Version}: all guests, the pending or the confirmed
+	 * ones. It reads the version, by index too, until it is first changed,
+	 * when it copies the guests into a list of its own.
+	 */
+	private static final class VersionList extends AbstractList<Guest> implements RandomAccess {
+		private final Version version;
+		private final int kind;
+		private final int size;
+		private ArrayList<Guest> own;
+
+		private VersionList(Version version, int kind, int size) {
+			this.version = version;
+			this.kind = kind;
+			this.size = size;
+			this.own = null;
+		}
+
+		private ArrayList<Guest> own() {
+			if (own == null) {
+				own = new ArrayList<>(size);
+				for (int i = version.next(kind, 0); i >= 0; i = version.next(kind, i + 1)) {
+					own.add(guest(version.chunks, i));
+				}
+			}
+			return own;
+		}
+
+		@Override
+		public int size() {
+			return own == null ? size : own.size();
+		}
+
+		@Override
+		public Guest get(int i) {
+			if (own != null) {
+				return own.get(i);
+			}
+			Objects.checkIndex(i, size);
+			return version.guestAt(kind, i);
+		}
+
+		@Override
+		public Guest set(int i, Guest g) {
+			return own().set(i, g);
+		}
+
+		@Override
+		public void add(int i, Guest g) {
+			modCount++;
+			own().add(i, g);
+		}
+
+		@Override
+		public Guest remove(int i) {
+			modCount++;
+			return own().remove(i);
+		}
+
+		@Override
+		public void clear() {
+			modCount++;
+			own = new ArrayList<>();
+		}
+
+		@Override
+		public Iterator<Guest> iterator() {
+			if (own != null) {
+				return super.iterator();
+			}
+			return new Iterator<>() {
+				private int next = version.next(kind, 0);
+				private int index = 0;
+				private int last = -1;
+
+				@Override
+				public boolean hasNext() {
+					return own == null ? next >= 0 : index < own.size();
+				}
+
+				@Override
+				public Guest next() {
+					if (own != null) {
+						last = index;
+						return own.get(index++);
+					}
+					if (next < 0) {
+						throw new NoSuchElementException();
+					}
+					Guest g = guest(version.chunks, next);
+					next = version.next(kind, next + 1);
+					last = index++;
+					return g;
+				}
+
+				@Override
+				public void remove() {
+					if (last < 0) {
+						throw new IllegalStateException();
+					}
+					VersionList.this.remove(last);
+					index = last;
+					last = -1;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,533 @@
+import java.util.*;
+
+/**
+ * Search over the names of the guests of a {@link Gala}, kept up to date by
+ * its guest list through every command, undo and redo. Names are compared in
+ * lower case.
+ * <p>
+ * Prefix search looks at the start of every word of a name, so "tur" finds
+ * "Tina Turner". The word starts are kept sorted by the rest of the name and
+ * found with a binary search. New ones are inserted into a short sorted
+ * tail, merged into the sorted run once it grows past a few thousand words
+ * or 32 times the square root of the run, so an insert stays cheap and a
+ * merge rare.
+ * <p>
+ * Fuzzy search finds names, or words of names, within a number of edits of
+ * the query. Every name is indexed by its trigrams; an edit changes at most
+ * three trigrams, so a name within {@code d} edits shares at least one of
+ * any {@code 3d + 1} trigrams of the query and all but {@code 3d} of them.
+ * Only guests listed under the rarest of the query's trigrams are counted,
+ * in the lists of the others by scanning the short ones and by binary
+ * search in the long ones, and a guest is dropped as soon as it cannot get
+ * enough trigrams in common. The rest are compared. A query too short to have more than
+ * {@code 3d} trigrams compares every guest.
+ * <p>
+ * A removed guest is only marked; the index is rebuilt once the marked
+ * guests outnumber the live ones.
+ */
+final class GuestSearch {
+	private static final int MIN_TAIL = 4096;
+	private static final int MAX_OFFSET = (1 << 16) - 1;
+
+	private Guest[] guests;
+	private String[] keys;
+	private HashMap<Guest, Integer> ids;
+	private int count;
+	private int dead;
+	// word starts as id << 16 | offset into the key, in a sorted run and a sorted tail
+	private long[] words;
+	private int sorted;
+	private long[] tail;
+	private int tailSize;
+	// trigram to the ids of the guests having it, open addressed
+	private long[] grams;
+	private Postings[] postings;
+	private int gramCount;
+	// scratch space of the searches
+	private int[] seen;
+	private int[] hits;
+	private int stamp;
+	private int[] row;
+	private int[] previous;
+
+	GuestSearch(Iterable<Guest> guests) {
+		reset();
+		load(guests);
+	}
+
+	private void reset() {
+		this.guests = new Guest[16];
+		this.keys = new String[16];
+		this.ids = new HashMap<>();
+		this.count = 0;
+		this.dead = 0;
+		this.words = new long[0];
+		this.sorted = 0;
+		this.tail = new long[16];
+		this.tailSize = 0;
+		this.grams = new long[64];
+		this.postings = new Postings[64];
+		this.gramCount = 0;
+		this.seen = new int[16];
+		this.hits = new int[16];
+		this.stamp = 0;
+		this.row = new int[16];
+		this.previous = new int[16];
+	}
+
+	void added(Guest g) {
+		for (long word : add(g)) {
+			insert(word);
+		}
+		if (tailSize > Math.max(MIN_TAIL, 32 * (int) Math.sqrt(sorted))) {
+			merge();
+		}
+	}
+
+	void removed(Guest g) {
+		Integer id = ids.remove(g);
+		if (id == null) {
+			return;
+		}
+		guests[id] = null;
+		dead++;
+		if (dead > MIN_TAIL && dead > count - dead) {
+			List<Guest> live = new ArrayList<>(count - dead);
+			for (int i = 0; i < count; i++) {
+				if (guests[i] != null) {
+					live.add(guests[i]);
+				}
+			}
+			reset();
+			load(live);
+		}
+	}
+
+	/**
+	 * Up to {@code k} guests with a word of their name starting with
+	 * {@code prefix}, ordered by the name from that word on.
+	 */
+	public List<Guest> prefix(String prefix, int k) {
+		if (prefix == null || k <= 0) {
+			throw new IllegalArgumentException("prefix cannot be null and k must be positive");
+		}
+		String p = prefix.toLowerCase(Locale.ROOT);
+		List<Guest> result = new ArrayList<>();
+		stamp++;
+		int i = lowerBound(words, sorted, p);
+		int j = lowerBound(tail, tailSize, p);
+		while (result.size() < k) {
+			boolean fromRun = i < sorted && startsWith(words[i], p);
+			boolean fromTail = j < tailSize && startsWith(tail[j], p);
+			long word;
+			if (fromRun && (fromTail == false || compare(words[i], tail[j]) <= 0)) {
+				word = words[i++];
+			}
+			else if (fromTail) {
+				word = tail[j++];
+			}
+			else {
+				break;
+			}
+			int id = (int) (word >>> 16);
+			if (guests[id] != null && seen[id] != stamp) {
+				seen[id] = stamp;
+				result.add(guests[id]);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Up to {@code k} guests whose name, or a word of it, is at most
+	 * {@code maxDistance} edits from {@code query}, closest first.
+	 */
+	public List<Guest> fuzzy(String query, int maxDistance, int k) {
+		if (query == null || maxDistance < 0 || k <= 0) {
+			throw new IllegalArgumentException("query cannot be null, maxDistance negative or k not positive");
+		}
+		String q = query.toLowerCase(Locale.ROOT);
+		Set<Long> distinct = new HashSet<>();
+		for (int i = -1; i <= q.length() - 2; i++) {
+			distinct.add(trigram(q, i));
+		}
+		// a match misses at most 3 trigrams of the query per edit
+		int m = distinct.size();
+		int needed = m - 3 * maxDistance;
+		List<long[]> found = new ArrayList<>();
+		if (needed <= 0) {
+			for (int id = 0; id < count; id++) {
+				match(q, id, maxDistance, found);
+			}
+		}
+		else {
+			Postings[] lists = new Postings[m];
+			int n = 0;
+			for (long t : distinct) {
+				Postings p = postings[cell(t)];
+				lists[n++] = p == null ? Postings.EMPTY : p;
+			}
+			Arrays.sort(lists, Comparator.comparingInt(p -> p.size));
+			// every match is in one of the rarest lists
+			int rare = m - needed + 1;
+			stamp++;
+			int[] candidates = new int[16];
+			int c = 0;
+			for (int j = 0; j < rare; j++) {
+				Postings p = lists[j];
+				for (int i = 0; i < p.size; i++) {
+					int id = p.ids[i];
+					if (seen[id] != stamp) {
+						seen[id] = stamp;
+						hits[id] = 0;
+						if (c == candidates.length) {
+							candidates = Arrays.copyOf(candidates, c * 2);
+						}
+						candidates[c++] = id;
+					}
+					hits[id]++;
+				}
+			}
+			// count the other lists, scanning short ones and searching long
+			// ones, dropping candidates that can no longer get enough
+			for (int j = rare; j < m && c > 0; j++) {
+				Postings p = lists[j];
+				if (p.size < 8 * c) {
+					for (int i = 0; i < p.size; i++) {
+						if (seen[p.ids[i]] == stamp) {
+							hits[p.ids[i]]++;
+						}
+					}
+				}
+				else {
+					for (int i = 0; i < c; i++) {
+						if (Arrays.binarySearch(p.ids, 0, p.size, candidates[i]) >= 0) {
+							hits[candidates[i]]++;
+						}
+					}
+				}
+				int left = 0;
+				for (int i = 0; i < c; i++) {
+					if (hits[candidates[i]] + m - 1 - j >= needed) {
+						candidates[left++] = candidates[i];
+					}
+				}
+				c = left;
+			}
+			for (int i = 0; i < c; i++) {
+				if (hits[candidates[i]] >= needed) {
+					match(q, candidates[i], maxDistance, found);
+				}
+			}
+		}
+		found.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : keys[(int) a[1]].compareTo(keys[(int) b[1]]));
+		List<Guest> result = new ArrayList<>(Math.min(k, found.size()));
+		for (int i = 0; i < found.size() && i < k; i++) {
+			result.add(guests[(int) found.get(i)[1]]);
+		}
+		return result;
+	}
+
+	public int size() {
+		return count - dead;
+	}
+
+	/**
+	 * Gives {@code g} the next id and indexes its trigrams; returns its word
+	 * starts.
+	 */
+	private long[] add(Guest g) {
+		if (count == guests.length) {
+			guests = Arrays.copyOf(guests, count * 2);
+			keys = Arrays.copyOf(keys, count * 2);
+			seen = Arrays.copyOf(seen, count * 2);
+			hits = Arrays.copyOf(hits, count * 2);
+		}
+		int id = count++;
+		String key = g.getName().toLowerCase(Locale.ROOT);
+		guests[id] = g;
+		keys[id] = key;
+		ids.put(g, id);
+		for (int i = -1; i <= key.length() - 2; i++) {
+			long t = trigram(key, i);
+			int cell = cell(t);
+			if (postings[cell] == null) {
+				grams[cell] = t;
+				postings[cell] = new Postings();
+				if (2 * ++gramCount > grams.length) {
+					rehash();
+				}
+				cell = cell(t);
+			}
+			postings[cell].add(id);
+		}
+		int n = 0;
+		long[] starts = new long[4];
+		for (int i = 0; i < key.length() && i <= MAX_OFFSET; i++) {
+			if (key.charAt(i) != ' ' && (i == 0 || key.charAt(i - 1) == ' ')) {
+				if (n == starts.length) {
+					starts = Arrays.copyOf(starts, n * 2);
+				}
+				starts[n++] = ((long) id << 16) | i;
+			}
+		}
+		return Arrays.copyOf(starts, n);
+	}
+
+	/**
+	 * Puts {@code word} into the tail, keeping it sorted.
+	 */
+	private void insert(long word) {
+		if (tailSize == tail.length) {
+			tail = Arrays.copyOf(tail, tailSize * 2);
+		}
+		int lo = 0;
+		int hi = tailSize;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(tail[mid], word) < 0) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		System.arraycopy(tail, lo, tail, lo + 1, tailSize - lo);
+		tail[lo] = word;
+		tailSize++;
+	}
+
+	/**
+	 * Cell of trigram {@code t} in the table, or the free cell where it goes.
+	 */
+	private int cell(long t) {
+		int mask = grams.length - 1;
+		int i = (int) ((t * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+		while (postings[i] != null && grams[i] != t) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	private void rehash() {
+		long[] oldGrams = grams;
+		Postings[] oldPostings = postings;
+		grams = new long[oldGrams.length * 2];
+		postings = new Postings[oldGrams.length * 2];
+		for (int i = 0; i < oldGrams.length; i++) {
+			if (oldPostings[i] != null) {
+				int cell = cell(oldGrams[i]);
+				grams[cell] = oldGrams[i];
+				postings[cell] = oldPostings[i];
+			}
+		}
+	}
+
+	/**
+	 * Adds guest {@code id} to {@code found} with its distance if it is live
+	 * and close enough to {@code q}.
+	 */
+	private void match(String q, int id, int max, List<long[]> found) {
+		if (guests[id] == null) {
+			return;
+		}
+		String key = keys[id];
+		int best = distance(q, key, 0, key.length(), max);
+		for (int i = 0; i < key.length() && best > 0; i++) {
+			if (key.charAt(i) == ' ' || (i > 0 && key.charAt(i - 1) != ' ')) {
+				continue;
+			}
+			int end = key.indexOf(' ', i);
+			best = Math.min(best, distance(q, key, i, end < 0 ? key.length() : end, Math.min(max, best)));
+		}
+		if (best <= max) {
+			found.add(new long[] { best, id });
+		}
+	}
+
+	/**
+	 * Edit distance between {@code q} and {@code key[from, to)}, or
+	 * {@code max + 1} once it is certain to exceed {@code max}.
+	 */
+	private int distance(String q, String key, int from, int to, int max) {
+		int n = to - from;
+		if (Math.abs(n - q.length()) > max) {
+			return max + 1;
+		}
+		if (row.length <= n) {
+			row = new int[n + 1];
+			previous = new int[n + 1];
+		}
+		for (int j = 0; j <= n; j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= q.length(); i++) {
+			row[0] = i;
+			int low = i;
+			char c = q.charAt(i - 1);
+			for (int j = 1; j <= n; j++) {
+				int cost = c == key.charAt(from + j - 1) ? 0 : 1;
+				row[j] = Math.min(Math.min(row[j - 1], previous[j]) + 1, previous[j - 1] + cost);
+				low = Math.min(low, row[j]);
+			}
+			if (low > max) {
+				return max + 1;
+			}
+			int[] temp = previous;
+			previous = row;
+			row = temp;
+		}
+		return Math.min(previous[n], max + 1);
+	}
+
+	/**
+	 * Trigram of {@code key} padded with a space on either side, starting at
+	 * {@code i}, which may be -1.
+	 */
+	private static long trigram(String key, int i) {
+		long t = 0;
+		for (int j = i; j < i + 3; j++) {
+			char c = j < 0 || j >= key.length() ? ' ' : key.charAt(j);
+			t = (t << 16) | c;
+		}
+		return t;
+	}
+
+	private boolean startsWith(long word, String p) {
+		String key = keys[(int) (word >>> 16)];
+		return key.startsWith(p, (int) (word & MAX_OFFSET));
+	}
+
+	private int compare(long a, long b) {
+		String x = keys[(int) (a >>> 16)];
+		String y = keys[(int) (b >>> 16)];
+		int i = (int) (a & MAX_OFFSET);
+		int j = (int) (b & MAX_OFFSET);
+		while (i < x.length() && j < y.length()) {
+			char c = x.charAt(i++);
+			char d = y.charAt(j++);
+			if (c != d) {
+				return c - d;
+			}
+		}
+		int c = (x.length() - i) - (y.length() - j);
+		if (c == 0) {
+			// same word on: by the whole name, then by id
+			c = x.compareTo(y);
+		}
+		return c != 0 ? c : Long.compare(a, b);
+	}
+
+	/**
+	 * First index in {@code a[0, size)} whose word is not before {@code p}.
+	 */
+	private int lowerBound(long[] a, int size, String p) {
+		int lo = 0;
+		int hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			String key = keys[(int) (a[mid] >>> 16)];
+			int from = (int) (a[mid] & MAX_OFFSET);
+			int n = Math.min(key.length() - from, p.length());
+			int c = 0;
+			for (int i = 0; i < n && c == 0; i++) {
+				c = key.charAt(from + i) - p.charAt(i);
+			}
+			if (c < 0 || (c == 0 && key.length() - from < p.length())) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Indexes {@code guests} in bulk, sorting their words once.
+	 */
+	private void load(Iterable<Guest> guests) {
+		for (Guest g : guests) {
+			for (long word : add(g)) {
+				if (tailSize == tail.length) {
+					tail = Arrays.copyOf(tail, tailSize * 2);
+				}
+				tail[tailSize++] = word;
+			}
+		}
+		sort(tail, new long[tailSize], 0, tailSize);
+		merge();
+	}
+
+	/**
+	 * Merges the tail into the sorted run, dropping the words of removed
+	 * guests.
+	 */
+	private void merge() {
+		long[] w = new long[sorted + tailSize];
+		int i = 0;
+		int j = 0;
+		int n = 0;
+		while (i < sorted || j < tailSize) {
+			long next;
+			if (j == tailSize || (i < sorted && compare(words[i], tail[j]) <= 0)) {
+				next = words[i++];
+			}
+			else {
+				next = tail[j++];
+			}
+			if (guests[(int) (next >>> 16)] != null) {
+				w[n++] = next;
+			}
+		}
+		words = w;
+		sorted = n;
+		tail = new long[16];
+		tailSize = 0;
+	}
+
+	private void sort(long[] a, long[] temp, int from, int to) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		sort(a, temp, from, mid);
+		sort(a, temp, mid, to);
+		if (compare(a[mid - 1], a[mid]) <= 0) {
+			return;
+		}
+		System.arraycopy(a, from, temp, from, to - from);
+		int i = from;
+		int j = mid;
+		for (int n = from; n < to; n++) {
+			if (j == to || (i < mid && compare(temp[i], temp[j]) <= 0)) {
+				a[n] = temp[i++];
+			}
+			else {
+				a[n] = temp[j++];
+			}
+		}
+	}
+
+	private static final class Postings {
+		private static final Postings EMPTY = new Postings();
+
+		private int[] ids;
+		private int size;
+
+		private Postings() {
+			this.ids = new int[4];
+			this.size = 0;
+		}
+
+		private void add(int id) {
+			if (size > 0 && ids[size - 1] == id) {
+				return;
+			}
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+	}
+}
@@ -0,0 +1,94 @@
+import java.time.Duration;
+
+/**
+ * Limits on the undo history of a {@link Gala}: how many commands it keeps,
+ * roughly how many bytes they may hold on to, and how long a command stays
+ * undoable. Once a limit is passed the oldest commands are dropped. A limit
+ * of 0 is no limit.
+ */
+public final class HistoryPolicy {
+	/**
+	 * The limit that made the history drop a command.
+	 */
+	public enum Limit {
+		DEPTH, BYTES, AGE
+	}
+
+	private final int maxDepth;
+	private final long maxBytes;
+	private final long maxAgeNanos;
+
+	private HistoryPolicy(Builder b) {
+		this.maxDepth = b.maxDepth;
+		this.maxBytes = b.maxBytes;
+		this.maxAgeNanos = b.maxAgeNanos;
+	}
+
+	/**
+	 * Keeps every command, as a gala did before policies.
+	 */
+	public static HistoryPolicy unbounded() {
+		return new Builder().build();
+	}
+
+	public int getMaxDepth() {
+		return maxDepth;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public long getMaxAgeNanos() {
+		return maxAgeNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "HistoryPolicy[maxDepth=" + maxDepth + ",maxBytes=" + maxBytes + ",maxAgeNanos=" + maxAgeNanos + "]";
+	}
+
+	public static final class Builder {
+		private int maxDepth;
+		private long maxBytes;
+		private long maxAgeNanos;
+
+		public Builder() {
+			this.maxDepth = 0;
+			this.maxBytes = 0;
+			this.maxAgeNanos = 0;
+		}
+
+		public Builder maxDepth(int depth) {
+			if (depth < 0) {
+				throw new IllegalArgumentException("depth cannot be negative");
+			}
+			this.maxDepth = depth;
+			return this;
+		}
+
+		/**
+		 * Caps the estimate of the memory the retained commands hold on to,
+		 * themselves and their guests; the newest command is always kept.
+		 */
+		public Builder maxBytes(long bytes) {
+			if (bytes < 0) {
+				throw new IllegalArgumentException("bytes cannot be negative");
+			}
+			this.maxBytes = bytes;
+			return this;
+		}
+
+		public Builder maxAge(Duration age) {
+			if (age == null || age.isNegative()) {
+				throw new IllegalArgumentException("age cannot be null or negative");
+			}
+			this.maxAgeNanos = age.toNanos();
+			return this;
+		}
+
+		public HistoryPolicy build() {
+			return new HistoryPolicy(this);
+		}
+	}
+}
@@ -0,0 +1,12 @@
+
+/**
+ * A visitor that can be run over disjoint parts of a map in parallel.
+ * {@link #split()} returns an empty visitor with the same configuration, and
+ * {@link #merge} folds the results of a visitor that covered the parts right
+ * after this one's into this one. Merging in traversal order must give the
+ * same result as a single sequential traversal.
+ */
+public interface IMergeableVisitor<V extends IMergeableVisitor<V>> extends IRegionVisitor {
+    V split();
+    void merge(V other);
+}
@@ -0,0 +1,11 @@
+
+/**
+ * Visitor over the records of a {@link MapSnapshot}. Records are passed by
+ * number and read through the snapshot's accessors, so a traversal creates
+ * no region objects.
+ */
+public interface ISnapshotVisitor {
+    default void visitState(MapSnapshot snapshot, int record) {}
+    default void visitSmallCity(MapSnapshot snapshot, int record) {}
+    default void visitLargeCity(MapSnapshot snapshot, int record) {}
+}
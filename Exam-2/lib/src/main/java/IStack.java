@@ -0,0 +1,24 @@
+/**
+ * Last in, first out stack as used for the command history of a
+ * {@link Gala}: {@link Stack} for a gala used from one thread,
+ * {@link ConcurrentStack} for one shared between threads.
+ */
+public interface IStack<T> {
+	/**
+	 * Top element; throws {@link IndexOutOfBoundsException} when empty.
+	 */
+	T peek();
+	/**
+	 * Element {@code i} counting from the bottom of the stack.
+	 */
+	T get(int i);
+	/**
+	 * Removes the top element; throws {@link IndexOutOfBoundsException} when
+	 * empty.
+	 */
+	T pop();
+	boolean push(T o);
+	boolean isEmpty();
+	int getSize();
+	void clear();
+}
@@ -3,11 +3,15 @@ public class LargeCity extends City {
 		
 		public LargeCity (String n, int p) {
 			super(n, p);
-			if (p <= 250000) {
+			if (isInRange(p) == false) {
 				throw new IllegalArgumentException ("Population not in range (250001," + Integer.MAX_VALUE +") [" + p + "]");
 			}
 		}
 
+		static boolean isInRange(int p) {
+			return p > 250000;
+		}
+
 		@Override
 		public void accept(IRegionVisitor visitor) {
 			visitor.visit(this);
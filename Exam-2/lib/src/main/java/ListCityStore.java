@@ -0,0 +1,37 @@
+import java.util.*;
+
+/**
+ * City store holding the city objects themselves.
+ */
+final class ListCityStore extends CityStore {
+	private final List<City> cities;
+
+	public ListCityStore() {
+		this.cities = new ArrayList<>();
+	}
+
+	@Override
+	protected void append(City c) {
+		cities.add(c);
+	}
+
+	@Override
+	public City get(int i) {
+		return cities.get(i);
+	}
+
+	@Override
+	public int population(int i) {
+		return cities.get(i).getPopulation();
+	}
+
+	@Override
+	public int size() {
+		return cities.size();
+	}
+
+	@Override
+	public List<City> copy() {
+		return new ArrayList<>(cities);
+	}
+}
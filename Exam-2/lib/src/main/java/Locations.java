@@ -0,0 +1,149 @@
+import java.util.*;
+
+/**
+ * Dictionary of the regions of one or more {@link Map}s, numbering every
+ * state and city name densely in a {@link NameDictionary} and remembering,
+ * by id, which ids are the small and the large cities of each state.
+ * <p>
+ * Built over the dictionary {@link CarRide}s are numbered in, as with a
+ * {@link CarRideBatch} sharing it, it joins rides to regions without
+ * hashing a name: a ride's endpoint is already an id, and a set of places
+ * is a {@link BitSet} of ids, so "rides leaving the large cities of a
+ * state" is a bit test per ride. Rides numbered in another dictionary, or
+ * in none, are looked up by name instead.
+ * <p>
+ * {@link #add(Map)} takes the regions the map holds at the time; regions
+ * added later need another call. Not thread-safe.
+ */
+public final class Locations {
+	private final NameDictionary names;
+	private final BitSet states;
+	// cities of each state, by the id of the state; null for other ids
+	private BitSet[] small;
+	private BitSet[] large;
+
+	public Locations() {
+		this(new NameDictionary());
+	}
+
+	public Locations(NameDictionary names) {
+		if (names == null) {
+			throw new IllegalArgumentException("names cannot be null");
+		}
+		this.names = names;
+		this.states = new BitSet();
+		this.small = new BitSet[16];
+		this.large = new BitSet[16];
+	}
+
+	public NameDictionary getNames() {
+		return names;
+	}
+
+	/**
+	 * Numbers the states and cities of {@code map}; a city outside any
+	 * state is numbered but belongs to no state.
+	 */
+	public void add(Map map) {
+		if (map == null) {
+			throw new IllegalArgumentException("Map cannot be null");
+		}
+		for (Region r : map.regions()) {
+			if (r instanceof State s) {
+				int id = names.id(s.getName());
+				states.set(id);
+				if (id >= small.length) {
+					int capacity = Math.max(id + 1, small.length * 2);
+					small = Arrays.copyOf(small, capacity);
+					large = Arrays.copyOf(large, capacity);
+				}
+				if (small[id] == null) {
+					small[id] = new BitSet();
+					large[id] = new BitSet();
+				}
+				int n = s.getCityCount();
+				for (int i = 0; i < n; i++) {
+					City c = s.getCity(i);
+					int city = names.id(c.getName());
+					if (c instanceof LargeCity) {
+						large[id].set(city);
+					}
+					else if (c instanceof SmallCity) {
+						small[id].set(city);
+					}
+				}
+			}
+			else {
+				names.id(r.getName());
+			}
+		}
+	}
+
+	/**
+	 * Id of the region called {@code name}, or -1 if it has none.
+	 */
+	public int id(String name) {
+		return names.find(name);
+	}
+
+	public boolean isState(String name) {
+		int id = names.find(name);
+		return id >= 0 && states.get(id);
+	}
+
+	/**
+	 * Ids of the small cities of {@code state}; empty for an unknown state.
+	 */
+	public BitSet getSmallCities(String state) {
+		return cities(state, small);
+	}
+
+	/**
+	 * Ids of the large cities of {@code state}; empty for an unknown state.
+	 */
+	public BitSet getLargeCities(String state) {
+		return cities(state, large);
+	}
+
+	public BitSet getCities(String state) {
+		BitSet set = getSmallCities(state);
+		set.or(getLargeCities(state));
+		return set;
+	}
+
+	private BitSet cities(String state, BitSet[] kind) {
+		int id = names.find(state);
+		if (id < 0 || states.get(id) == false) {
+			return new BitSet();
+		}
+		return (BitSet) kind[id].clone();
+	}
+
+	/**
+	 * Rides of {@code rides} starting at one of {@code places}, in order.
+	 */
+	public List<CarRide> departing(Collection<CarRide> rides, BitSet places) {
+		List<CarRide> list = new ArrayList<>();
+		for (CarRide r : rides) {
+			int id = names.find(r.getFrom(), r.getFromId());
+			if (id >= 0 && places.get(id)) {
+				list.add(r);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Rides of {@code rides} ending at one of {@code places}, in order.
+	 */
+	public List<CarRide> arriving(Collection<CarRide> rides, BitSet places) {
+		List<CarRide> list = new ArrayList<>();
+		for (CarRide r : rides) {
+			int id = names.find(r.getTo(), r.getToId());
+			if (id >= 0 && places.get(id)) {
+				list.add(r);
+			}
+		}
+		return list;
+	}
+}
@@ -1,10 +1,21 @@
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class Map {
 	private List<Region> regionList;
+	private PopulationIndex populationIndex;
+	private int stateCount;
+	private int smallCityCount;
+	private int largeCityCount;
+	private long totalPopulation;
 	
 	public Map() {
 		this.regionList= new ArrayList<>();
+		this.populationIndex= new PopulationIndex();
+		this.stateCount=0;
+		this.smallCityCount=0;
+		this.largeCityCount=0;
+		this.totalPopulation=0;
 	}
 	
 	public void addRegions (Region ...regions) {
@@ -16,15 +27,120 @@ public class Map {
 				throw new IllegalArgumentException("Regions cannot be null");
 			}
 			else {
+			int position = regionList.size();
 			regionList.add(r);
+			index(r, position);
 			}
 		}
 	}
 	
 	public void traverse (IRegionVisitor v) {
-		for (Region r : regionList) {
-			r.accept(v);
+		for (int i = 0; i < regionList.size(); i++) {
+			RegionDispatch.dispatch(regionList.get(i), v);
 		}
 	}
 	
+	/**
+	 * Visits the map on the common fork/join pool and merges the partial
+	 * results into {@code v}; {@code v} ends up as if passed to
+	 * {@link #traverse}.
+	 */
+	public <V extends IMergeableVisitor<V>> void traverseParallel (V v) {
+		traverseParallel(v, ForkJoinPool.commonPool());
+	}
+	
+	public <V extends IMergeableVisitor<V>> void traverseParallel (V v, ForkJoinPool pool) {
+		if (v == null || pool == null) {
+			throw new IllegalArgumentException("Visitor and pool cannot be null");
+		}
+		ParallelTraversal.traverse(regionList, v, pool);
+	}
+	
+	/**
+	 * Returns a {@link CountRegionVisitor} holding the counts a traversal of
+	 * this map would produce, read from the running aggregates.
+	 */
+	public CountRegionVisitor count() {
+		return new CountRegionVisitor(stateCount, getCityCount());
+	}
+	
+	/**
+	 * Running aggregates over the regions a traversal would visit: states,
+	 * and the small and large cities held directly or by those states.
+	 */
+	public int getStateCount() {
+		return stateCount;
+	}
+	public int getCityCount() {
+		return smallCityCount + largeCityCount;
+	}
+	public int getSmallCityCount() {
+		return smallCityCount;
+	}
+	public int getLargeCityCount() {
+		return largeCityCount;
+	}
+	public long getTotalPopulation() {
+		return totalPopulation;
+	}
+	
+	/**
+	 * Returns the cities a {@link PopulationRangeVisitor} for {@code [l, u]}
+	 * would collect from this map, in the same order, without visiting
+	 * every region.
+	 */
+	public List<City> getCitiesInRange(int l, int u) {
+		if (l<0 || u<0) {
+			throw new IllegalArgumentException("Range must have positive values");
+		}
+		if (l>u) {
+			throw new IllegalArgumentException("Range must be incremental");
+		}
+		return populationIndex.range(l, u, this::city);
+	}
+	
+	List<Region> regions() {
+		return Collections.unmodifiableList(regionList);
+	}
+	
+	private void index(Region r, int position) {
+		if (r instanceof State s) {
+			stateCount++;
+			s.store().subscribe((c, i) -> index(c, PopulationIndex.position(position, i)));
+		}
+		else if (r instanceof City c) {
+			index(c, PopulationIndex.position(position, 0));
+		}
+	}
+	
+	/**
+	 * Only small and large cities reach the visitors' overloads; other city
+	 * types fall through to the default {@code visit(City)}.
+	 */
+	private void index(City c, long position) {
+		if (c instanceof SmallCity) {
+			smallCityCount++;
+		}
+		else if (c instanceof LargeCity) {
+			largeCityCount++;
+		}
+		else {
+			return;
+		}
+		totalPopulation += c.getPopulation();
+		populationIndex.add(c.getPopulation(), position);
+	}
+	
+	/**
+	 * The city at a traversal {@code position}, from the store of its state
+	 * or the map itself.
+	 */
+	private City city(long position) {
+		Region r = regionList.get((int) (position >>> 32));
+		if (r instanceof State s) {
+			return s.store().get((int) position);
+		}
+		return (City) r;
+	}
+	
 }
@@ -0,0 +1,327 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Read-only, memory-mapped image of a {@link Map}.
+ * <p>
+ * A snapshot file holds a 40 byte header, one 16 byte record per region in
+ * traversal order and a blob of UTF-8 names. A record is four ints: the
+ * kind, the population of a city or the number of cities of a state, and
+ * the offset and length of its name in the blob. The cities of a state
+ * follow its record directly. Names are stored once however often they occur.
+ * <p>
+ * {@link #open} maps the file with {@link FileChannel#map}; the records are
+ * read in place and no region object is built unless asked for. Only states
+ * and small and large cities can be stored, and a file is limited to 2 GB.
+ */
+public final class MapSnapshot {
+	private static final int MAGIC = 0x4D415053; // "MAPS"
+	private static final int VERSION = 1;
+	private static final int HEADER_BYTES = 40;
+	private static final int RECORD_BYTES = 16;
+
+	static final int STATE = 1;
+	static final int SMALL_CITY = 2;
+	static final int LARGE_CITY = 3;
+
+	private final ByteBuffer buffer;
+	private final int regionCount;
+	private final int recordCount;
+	private final int stateCount;
+	private final int cityCount;
+	private final int namesOffset;
+	private final long totalPopulation;
+
+	private MapSnapshot(ByteBuffer buffer) throws IOException {
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a map snapshot");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported snapshot version [" + buffer.getInt(4) + "]");
+		}
+		this.buffer = buffer;
+		this.regionCount = buffer.getInt(8);
+		this.recordCount = buffer.getInt(12);
+		this.stateCount = buffer.getInt(16);
+		this.cityCount = buffer.getInt(20);
+		this.namesOffset = buffer.getInt(24);
+		this.totalPopulation = buffer.getLong(32);
+		if (namesOffset != HEADER_BYTES + (long) recordCount * RECORD_BYTES
+				|| namesOffset + (long) buffer.getInt(28) != buffer.capacity()) {
+			throw new IOException("Truncated map snapshot");
+		}
+	}
+
+	/**
+	 * Maps the snapshot in {@code file} into memory.
+	 */
+	public static MapSnapshot open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Map snapshot larger than 2 GB");
+			}
+			return new MapSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * Writes {@code map} to {@code file}, replacing its contents.
+	 */
+	public static void write(Map map, Path file) throws IOException {
+		if (map == null || file == null) {
+			throw new IllegalArgumentException("Map and file cannot be null");
+		}
+		Writer w = new Writer();
+		List<Region> regions = map.regions();
+		for (int i = 0; i < regions.size(); i++) {
+			w.add(regions.get(i));
+		}
+		w.writeTo(file, regions.size());
+	}
+
+	/**
+	 * Number of top level regions, as added to the map.
+	 */
+	public int regionCount() {
+		return regionCount;
+	}
+
+	/**
+	 * Number of records: every region plus the cities of every state.
+	 */
+	public int recordCount() {
+		return recordCount;
+	}
+
+	public int kind(int record) {
+		return buffer.getInt(offset(record));
+	}
+
+	public boolean isState(int record) {
+		return kind(record) == STATE;
+	}
+
+	/**
+	 * Population of a city record.
+	 */
+	public int population(int record) {
+		int at = offset(record);
+		if (buffer.getInt(at) == STATE) {
+			throw new IllegalArgumentException("Record " + record + " is a state");
+		}
+		return buffer.getInt(at + 4);
+	}
+
+	/**
+	 * Number of cities of a state record; they are the records right after it.
+	 */
+	public int cityCount(int record) {
+		int at = offset(record);
+		if (buffer.getInt(at) != STATE) {
+			throw new IllegalArgumentException("Record " + record + " is not a state");
+		}
+		return buffer.getInt(at + 4);
+	}
+
+	/**
+	 * Decodes the name of a record; the only accessor that allocates.
+	 */
+	public String name(int record) {
+		int at = offset(record);
+		byte[] bytes = new byte[buffer.getInt(at + 12)];
+		buffer.get(namesOffset + buffer.getInt(at + 8), bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Visits every record in traversal order without building region objects.
+	 */
+	public void traverse(ISnapshotVisitor v) {
+		for (int r = 0; r < recordCount; r++) {
+			switch (buffer.getInt(HEADER_BYTES + r * RECORD_BYTES)) {
+			case STATE:
+				v.visitState(this, r);
+				break;
+			case SMALL_CITY:
+				v.visitSmallCity(this, r);
+				break;
+			default:
+				v.visitLargeCity(this, r);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Visits the snapshot with a region visitor, building each region as it
+	 * is reached; a state is built together with its cities.
+	 */
+	public void traverse(IRegionVisitor v) {
+		int r = 0;
+		while (r < recordCount) {
+			Region region = region(r);
+			region.accept(v);
+			r += isState(r) ? cityCount(r) + 1 : 1;
+		}
+	}
+
+	/**
+	 * Counts a {@link CountRegionVisitor} would produce, read from the header.
+	 */
+	public CountRegionVisitor count() {
+		return new CountRegionVisitor(stateCount, cityCount);
+	}
+
+	public long getTotalPopulation() {
+		return totalPopulation;
+	}
+
+	/**
+	 * Cities with a population in {@code [l, u]}, in traversal order; only
+	 * matching records are turned into objects.
+	 */
+	public List<City> getCitiesInRange(int l, int u) {
+		if (l<0 || u<0) {
+			throw new IllegalArgumentException("Range must have positive values");
+		}
+		if (l>u) {
+			throw new IllegalArgumentException("Range must be incremental");
+		}
+		List<City> temp = new ArrayList<>();
+		for (int r = 0; r < recordCount; r++) {
+			int at = HEADER_BYTES + r * RECORD_BYTES;
+			int p = buffer.getInt(at + 4);
+			if (buffer.getInt(at) != STATE && p >= l && p <= u) {
+				temp.add(city(r));
+			}
+		}
+		return temp;
+	}
+
+	/**
+	 * Rebuilds the whole map on the heap.
+	 */
+	public Map toMap() {
+		Map m = new Map();
+		int r = 0;
+		while (r < recordCount) {
+			m.addRegions(region(r));
+			r += isState(r) ? cityCount(r) + 1 : 1;
+		}
+		return m;
+	}
+
+	private Region region(int record) {
+		if (!isState(record)) {
+			return city(record);
+		}
+		State s = new State(name(record));
+		int n = cityCount(record);
+		for (int i = 1; i <= n; i++) {
+			s.addCities(city(record + i));
+		}
+		return s;
+	}
+
+	private City city(int record) {
+		String name = name(record);
+		int p = population(record);
+		return kind(record) == LARGE_CITY ? new LargeCity(name, p) : new SmallCity(name, p);
+	}
+
+	private int offset(int record) {
+		Objects.checkIndex(record, recordCount);
+		return HEADER_BYTES + record * RECORD_BYTES;
+	}
+
+	/**
+	 * Collects records and names in memory before writing the file.
+	 */
+	private static final class Writer {
+		private int[] records = new int[64];
+		private int recordCount = 0;
+		private int stateCount = 0;
+		private int cityCount = 0;
+		private long totalPopulation = 0;
+		private final ByteArrayOutputStream names = new ByteArrayOutputStream();
+		private final HashMap<String, Integer> nameOffsets = new HashMap<>();
+
+		void add(Region r) {
+			if (r instanceof State s) {
+				CityStore cities = s.store();
+				record(STATE, cities.size(), s.getName());
+				stateCount++;
+				for (int i = 0; i < cities.size(); i++) {
+					add(cities.get(i));
+				}
+			}
+			else if (r instanceof LargeCity c) {
+				record(LARGE_CITY, c.getPopulation(), c.getName());
+				cityCount++;
+				totalPopulation += c.getPopulation();
+			}
+			else if (r instanceof SmallCity c) {
+				record(SMALL_CITY, c.getPopulation(), c.getName());
+				cityCount++;
+				totalPopulation += c.getPopulation();
+			}
+			else {
+				throw new IllegalArgumentException("Snapshots only hold states, small and large cities");
+			}
+		}
+
+		private void record(int kind, int value, String name) {
+			Integer at = nameOffsets.get(name);
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			if (at == null) {
+				at = names.size();
+				names.writeBytes(bytes);
+				nameOffsets.put(name, at);
+			}
+			if (recordCount * 4 == records.length) {
+				records = Arrays.copyOf(records, records.length * 2);
+			}
+			int i = recordCount * 4;
+			records[i] = kind;
+			records[i + 1] = value;
+			records[i + 2] = at;
+			records[i + 3] = bytes.length;
+			recordCount++;
+		}
+
+		void writeTo(Path file, int regionCount) throws IOException {
+			long namesOffset = HEADER_BYTES + (long) recordCount * RECORD_BYTES;
+			if (namesOffset + names.size() > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("Map too large for a snapshot");
+			}
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+			header.putInt(MAGIC).putInt(VERSION).putInt(regionCount).putInt(recordCount)
+			      .putInt(stateCount).putInt(cityCount).putInt((int) namesOffset).putInt(names.size())
+			      .putLong(totalPopulation).flip();
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+				writeFully(channel, header);
+				ByteBuffer chunk = ByteBuffer.allocate(RECORD_BYTES * 4096);
+				for (int i = 0; i < recordCount * 4; i++) {
+					if (!chunk.hasRemaining()) {
+						writeFully(channel, chunk.flip());
+						chunk.clear();
+					}
+					chunk.putInt(records[i]);
+				}
+				writeFully(channel, chunk.flip());
+				writeFully(channel, ByteBuffer.wrap(names.toByteArray()));
+			}
+		}
+
+		private static void writeFully(FileChannel channel, ByteBuffer b) throws IOException {
+			while (b.hasRemaining()) {
+				channel.write(b);
+			}
+		}
+	}
+}
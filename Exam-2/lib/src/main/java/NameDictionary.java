@@ -0,0 +1,71 @@
+import java.util.*;
+
+/**
+ * Dictionary encoding of names: each distinct name gets a dense id, starting
+ * at 0, and is stored once. Share one dictionary between columnar states to
+ * store a repeated city name only once.
+ */
+public final class NameDictionary {
+	private final HashMap<String, Integer> ids;
+	private String[] names;
+	private int size;
+
+	public NameDictionary() {
+		this.ids = new HashMap<>();
+		this.names = new String[16];
+		this.size = 0;
+	}
+
+	/**
+	 * Returns the id of {@code name}, assigning the next free one if the
+	 * name is new.
+	 */
+	public int id(String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("Name cannot be null");
+		}
+		Integer id = ids.get(name);
+		if (id != null) {
+			return id;
+		}
+		if (size == names.length) {
+			names = Arrays.copyOf(names, size * 2);
+		}
+		names[size] = name;
+		ids.put(name, size);
+		return size++;
+	}
+
+	/**
+	 * Returns the id of {@code name}, or -1 if it has none.
+	 */
+	public int find(String name) {
+		Integer id = ids.get(name);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * As {@link #id(String)}, skipping the lookup when {@code hint} is the id
+	 * of this very string, as it is for a name this dictionary handed out.
+	 */
+	int id(String name, int hint) {
+		return hint >= 0 && hint < size && names[hint] == name ? hint : id(name);
+	}
+
+	/**
+	 * As {@link #find(String)}, skipping the lookup when {@code hint} is the
+	 * id of this very string.
+	 */
+	int find(String name, int hint) {
+		return hint >= 0 && hint < size && names[hint] == name ? hint : find(name);
+	}
+
+	public String name(int id) {
+		Objects.checkIndex(id, size);
+		return names[id];
+	}
+
+	public int size() {
+		return size;
+	}
+}
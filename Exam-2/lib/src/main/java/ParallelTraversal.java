@@ -0,0 +1,110 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Fork/join traversal of a region list. Ranges of regions are halved down to
+ * {@link #REGION_GRAIN} regions, and states with more than
+ * {@link #CITY_GRAIN} cities are split over their city list. Each leaf runs a
+ * fresh {@link IMergeableVisitor#split() split} visitor, and results are
+ * merged left to right, so the outcome does not depend on scheduling.
+ */
+final class ParallelTraversal {
+	private static final int REGION_GRAIN = 256;
+	private static final int CITY_GRAIN = 4096;
+
+	private ParallelTraversal() {
+	}
+
+	static <V extends IMergeableVisitor<V>> void traverse(List<Region> regions, V v, ForkJoinPool pool) {
+		v.merge(pool.invoke(new RegionTask<>(regions, v, 0, regions.size())));
+	}
+
+	/**
+	 * States are split only when they are plain {@code State}s, since a
+	 * subclass may change what {@code accept} does.
+	 */
+	private static boolean isSplittable(Region r) {
+		return r.getClass() == State.class && ((State) r).store().size() > CITY_GRAIN;
+	}
+
+	private static final class RegionTask<V extends IMergeableVisitor<V>> extends RecursiveTask<V> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<Region> regions;
+		private final V prototype;
+		private final int from;
+		private final int to;
+
+		private RegionTask(List<Region> regions, V prototype, int from, int to) {
+			this.regions = regions;
+			this.prototype = prototype;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected V compute() {
+			if (to - from == 1 && isSplittable(regions.get(from))) {
+				State s = (State) regions.get(from);
+				return new CityTask<>(s, prototype, 0, s.store().size()).compute();
+			}
+			if (to - from <= REGION_GRAIN) {
+				boolean sequential = true;
+				for (int i = from; i < to && sequential; i++) {
+					sequential = !isSplittable(regions.get(i));
+				}
+				if (sequential) {
+					V v = prototype.split();
+					for (int i = from; i < to; i++) {
+						RegionDispatch.dispatch(regions.get(i), v);
+					}
+					return v;
+				}
+			}
+			int mid = (from + to) >>> 1;
+			RegionTask<V> left = new RegionTask<>(regions, prototype, from, mid);
+			RegionTask<V> right = new RegionTask<>(regions, prototype, mid, to);
+			left.fork();
+			V r = right.compute();
+			V l = left.join();
+			l.merge(r);
+			return l;
+		}
+	}
+
+	private static final class CityTask<V extends IMergeableVisitor<V>> extends RecursiveTask<V> {
+		private static final long serialVersionUID = 1L;
+
+		private final State state;
+		private final V prototype;
+		private final int from;
+		private final int to;
+
+		private CityTask(State state, V prototype, int from, int to) {
+			this.state = state;
+			this.prototype = prototype;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected V compute() {
+			if (to - from <= CITY_GRAIN) {
+				V v = prototype.split();
+				if (from == 0) {
+					v.visit(state);
+				}
+				RegionDispatch.dispatchCities(state.store(), from, to, v);
+				return v;
+			}
+			int mid = (from + to) >>> 1;
+			CityTask<V> left = new CityTask<>(state, prototype, from, mid);
+			CityTask<V> right = new CityTask<>(state, prototype, mid, to);
+			left.fork();
+			V r = right.compute();
+			V l = left.join();
+			l.merge(r);
+			return l;
+		}
+	}
+}
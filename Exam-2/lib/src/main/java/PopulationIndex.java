@@ -0,0 +1,183 @@
+import java.util.*;
+import java.util.function.LongFunction;
+
+/**
+ * Cities sorted by population, answering range queries with binary
+ * searches. An entry is only a population and the traversal position of its
+ * city, so results come back in the order a {@link PopulationRangeVisitor}
+ * would collect them, and the cities themselves stay with their regions: a
+ * columnar state keeps its columns, and only the cities a query finds are
+ * built from them.
+ * <p>
+ * New entries go to a small unsorted tail. A full tail is sorted into a run
+ * and merged with the runs of its size, like carrying in a binary counter,
+ * so there are at most log n runs, each twice the size of the one below,
+ * and an entry is merged O(log n) times; bulk loads stay O(n log n). A
+ * query searches every run and scans the tail without changing anything,
+ * so it costs O(log^2 n) plus the cities found, and any number of threads
+ * may query while no city is being added.
+ */
+final class PopulationIndex {
+	private static final int TAIL = 256;
+
+	// runs[k] is empty or holds TAIL << k entries sorted by population
+	private Run[] runs;
+	private int[] populations;
+	private long[] positions;
+	private int tail;
+	private int size;
+
+	public PopulationIndex() {
+		this.runs = new Run[4];
+		this.populations = new int[TAIL];
+		this.positions = new long[TAIL];
+		this.tail = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Traversal position of the {@code city}-th city of the {@code region}-th
+	 * region of a map; a city added straight to the map uses city 0.
+	 */
+	static long position(int region, int city) {
+		return ((long) region << 32) | city;
+	}
+
+	public void add(int population, long position) {
+		populations[tail] = population;
+		positions[tail] = position;
+		tail++;
+		size++;
+		if (tail == TAIL) {
+			carry(sortTail());
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Cities with a population in {@code [lower, upper]}, in traversal order,
+	 * each got from {@code cities} by its position.
+	 */
+	public List<City> range(int lower, int upper, LongFunction<City> cities) {
+		int k = 0;
+		for (Run r : runs) {
+			if (r != null) {
+				k += r.lowerBound(upper + 1L) - r.lowerBound(lower);
+			}
+		}
+		for (int i = 0; i < tail; i++) {
+			if (populations[i] >= lower && populations[i] <= upper) {
+				k++;
+			}
+		}
+		long[] order = new long[k];
+		int n = 0;
+		for (Run r : runs) {
+			if (r == null) {
+				continue;
+			}
+			int to = r.lowerBound(upper + 1L);
+			for (int i = r.lowerBound(lower); i < to; i++) {
+				order[n++] = r.positions[i];
+			}
+		}
+		for (int i = 0; i < tail; i++) {
+			if (populations[i] >= lower && populations[i] <= upper) {
+				order[n++] = positions[i];
+			}
+		}
+		Arrays.sort(order);
+		List<City> temp = new ArrayList<>(k);
+		for (long position : order) {
+			temp.add(cities.apply(position));
+		}
+		return temp;
+	}
+
+	/**
+	 * Moves the tail into a new run sorted by population.
+	 */
+	private Run sortTail() {
+		// the low half of each key remembers the entry
+		long[] keys = new long[tail];
+		for (int i = 0; i < tail; i++) {
+			keys[i] = ((long) populations[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+		Run r = new Run(tail);
+		for (int j = 0; j < tail; j++) {
+			int i = (int) keys[j];
+			r.populations[j] = populations[i];
+			r.positions[j] = positions[i];
+		}
+		tail = 0;
+		return r;
+	}
+
+	/**
+	 * Merges {@code r} with the runs of its size upwards until it finds an
+	 * empty level.
+	 */
+	private void carry(Run r) {
+		int k = 0;
+		while (k < runs.length && runs[k] != null) {
+			r = merge(runs[k], r);
+			runs[k] = null;
+			k++;
+		}
+		if (k == runs.length) {
+			runs = Arrays.copyOf(runs, k + 1);
+		}
+		runs[k] = r;
+	}
+
+	private static Run merge(Run a, Run b) {
+		Run m = new Run(a.populations.length + b.populations.length);
+		int i = 0;
+		int j = 0;
+		for (int n = 0; n < m.populations.length; n++) {
+			if (j == b.populations.length || (i < a.populations.length && a.populations[i] <= b.populations[j])) {
+				m.populations[n] = a.populations[i];
+				m.positions[n] = a.positions[i];
+				i++;
+			}
+			else {
+				m.populations[n] = b.populations[j];
+				m.positions[n] = b.positions[j];
+				j++;
+			}
+		}
+		return m;
+	}
+
+	private static final class Run {
+		private final int[] populations;
+		private final long[] positions;
+
+		private Run(int size) {
+			this.populations = new int[size];
+			this.positions = new long[size];
+		}
+
+		/**
+		 * First index whose population is at least {@code p}.
+		 */
+		private int lowerBound(long p) {
+			int lo = 0;
+			int hi = populations.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (populations[mid] < p) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+	}
+}
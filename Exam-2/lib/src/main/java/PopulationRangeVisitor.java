@@ -1,6 +1,6 @@
 import java.util.*;
 
-public class PopulationRangeVisitor implements IRegionVisitor{
+public class PopulationRangeVisitor implements IMergeableVisitor<PopulationRangeVisitor>{
 	private final int upper;
 	private final int lower;
 	private List<City> cities;
@@ -34,4 +34,22 @@ public class PopulationRangeVisitor implements IRegionVisitor{
 		}
 		return temp;
 	}
+	/**
+	 * Number of cities collected so far; with {@link #getCity} it reads the
+	 * result without the copy {@link #getCities()} makes.
+	 */
+	public int getCityCount() {
+		return cities.size();
+	}
+	public City getCity(int i) {
+		return cities.get(i);
+	}
+	@Override
+	public PopulationRangeVisitor split() {
+		return new PopulationRangeVisitor(lower, upper);
+	}
+	@Override
+	public void merge(PopulationRangeVisitor other) {
+		cities.addAll(other.cities);
+	}
 }
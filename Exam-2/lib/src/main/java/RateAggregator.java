@@ -0,0 +1,231 @@
+import java.util.*;
+
+/**
+ * Running rate statistics per route, the pair of start and destination,
+ * over a stream of {@link CarRide}s, each a {@link RateHistogram}.
+ * <p>
+ * Every route keeps the histogram of all its rides and, for a windowed
+ * aggregator, the histograms of the panes of the current window. Time is
+ * cut into panes of the slide's length and a window is the last
+ * {@code window / slide} of them, so a tumbling window is one pane and a
+ * sliding one several. Panes live in a ring reused as time moves on, so a
+ * route never holds more than the histograms of one window. Time is given
+ * by the caller with each ride and only moves forward: the window ends at
+ * the latest time seen, and a ride older than the window is counted in the
+ * totals only.
+ * <p>
+ * Not thread-safe. To aggregate on several threads, give each a
+ * {@link #split()} of one aggregator and {@link #merge} them when done;
+ * merging gives the same totals and windows as one aggregator seeing every
+ * ride.
+ */
+public final class RateAggregator {
+	private final long window;
+	private final long slide;
+	private final int panes;
+	private final HashMap<String, HashMap<String, Route>> routes;
+	private long now;
+	private long late;
+
+	/**
+	 * Aggregator keeping totals only.
+	 */
+	public RateAggregator() {
+		this(0, 0);
+	}
+
+	private RateAggregator(long window, long slide) {
+		this.window = window;
+		this.slide = slide;
+		this.panes = slide == 0 ? 0 : (int) (window / slide);
+		this.routes = new HashMap<>();
+		this.now = Long.MIN_VALUE;
+		this.late = 0;
+	}
+
+	/**
+	 * Aggregator whose windows cover {@code size} units of time each, one
+	 * after the other.
+	 */
+	public static RateAggregator tumbling(long size) {
+		return sliding(size, size);
+	}
+
+	/**
+	 * Aggregator whose window covers the last {@code size} units of time,
+	 * moving on by {@code slide} units; {@code size} must be a multiple of
+	 * {@code slide}.
+	 */
+	public static RateAggregator sliding(long size, long slide) {
+		if (size <= 0 || slide <= 0 || size % slide != 0) {
+			throw new IllegalArgumentException("size must be a positive multiple of slide");
+		}
+		if (size / slide > 1 << 16) {
+			throw new IllegalArgumentException("window cannot have more than 65536 panes");
+		}
+		return new RateAggregator(size, slide);
+	}
+
+	/**
+	 * Empty aggregator with the same windows as this one.
+	 */
+	public RateAggregator split() {
+		return new RateAggregator(window, slide);
+	}
+
+	/**
+	 * Adds {@code ride}, taken at {@code time}.
+	 */
+	public void add(CarRide ride, long time) {
+		if (ride == null) {
+			throw new IllegalArgumentException("ride cannot be null");
+		}
+		now = Math.max(now, time);
+		Route r = route(ride.getFrom(), ride.getTo());
+		int rate = ride.getRate();
+		r.total.add(rate);
+		if (panes == 0) {
+			return;
+		}
+		long pane = Math.floorDiv(time, slide);
+		if (pane <= Math.floorDiv(now, slide) - panes) {
+			late++;
+			return;
+		}
+		r.pane(pane, panes).add(rate);
+	}
+
+	private Route route(String from, String to) {
+		HashMap<String, Route> m = routes.get(from);
+		if (m == null) {
+			m = new HashMap<>();
+			routes.put(from, m);
+		}
+		Route r = m.get(to);
+		if (r == null) {
+			r = new Route(panes);
+			m.put(to, r);
+		}
+		return r;
+	}
+
+	/**
+	 * Statistics of every ride added from {@code from} to {@code to}; empty
+	 * for a route without rides.
+	 */
+	public RateHistogram getTotal(String from, String to) {
+		Route r = find(from, to);
+		return r == null ? new RateHistogram() : r.total.copy();
+	}
+
+	/**
+	 * Statistics of the rides from {@code from} to {@code to} in the window
+	 * ending at the latest time seen; the totals for an aggregator without
+	 * windows.
+	 */
+	public RateHistogram getWindow(String from, String to) {
+		if (panes == 0) {
+			return getTotal(from, to);
+		}
+		RateHistogram h = new RateHistogram();
+		Route r = find(from, to);
+		if (r != null) {
+			long last = Math.floorDiv(now, slide);
+			for (int i = 0; i < panes; i++) {
+				if (r.panes[i] != null && r.ids[i] > last - panes) {
+					h.merge(r.panes[i]);
+				}
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Start of the current window, inclusive; {@link Long#MIN_VALUE} before
+	 * the first ride or without windows.
+	 */
+	public long getWindowStart() {
+		if (panes == 0 || now == Long.MIN_VALUE) {
+			return Long.MIN_VALUE;
+		}
+		return (Math.floorDiv(now, slide) - panes + 1) * slide;
+	}
+
+	/**
+	 * Rides that arrived after their window had passed.
+	 */
+	public long getLate() {
+		return late;
+	}
+
+	public int getRouteCount() {
+		int n = 0;
+		for (HashMap<String, Route> to : routes.values()) {
+			n += to.size();
+		}
+		return n;
+	}
+
+	/**
+	 * Folds the rides of {@code other}, split from the same aggregator, into
+	 * this one; panes that have left the merged window are dropped.
+	 */
+	public void merge(RateAggregator other) {
+		if (other.window != window || other.slide != slide) {
+			throw new IllegalArgumentException("aggregators must have the same windows");
+		}
+		now = Math.max(now, other.now);
+		late += other.late;
+		for (java.util.Map.Entry<String, HashMap<String, Route>> f : other.routes.entrySet()) {
+			for (java.util.Map.Entry<String, Route> t : f.getValue().entrySet()) {
+				Route theirs = t.getValue();
+				Route mine = route(f.getKey(), t.getKey());
+				mine.total.merge(theirs.total);
+				for (int i = 0; i < panes; i++) {
+					if (theirs.panes[i] != null) {
+						mine.pane(theirs.ids[i], panes).merge(theirs.panes[i]);
+					}
+				}
+			}
+		}
+	}
+
+	private Route find(String from, String to) {
+		HashMap<String, Route> m = routes.get(from);
+		return m == null ? null : m.get(to);
+	}
+
+	private static final class Route {
+		private final RateHistogram total;
+		// pane histograms by pane id modulo the pane count, with their ids
+		private final RateHistogram[] panes;
+		private final long[] ids;
+
+		private Route(int panes) {
+			this.total = new RateHistogram();
+			this.panes = new RateHistogram[panes];
+			this.ids = new long[panes];
+		}
+
+		/**
+		 * Histogram of pane {@code id}, emptying the slot of an older pane;
+		 * a pane older than the one in its slot gets a scratch histogram
+		 * that is thrown away.
+		 */
+		private RateHistogram pane(long id, int count) {
+			int slot = (int) Math.floorMod(id, (long) count);
+			if (panes[slot] == null) {
+				panes[slot] = new RateHistogram();
+				ids[slot] = id;
+			}
+			else if (ids[slot] < id) {
+				panes[slot].clear();
+				ids[slot] = id;
+			}
+			else if (ids[slot] > id) {
+				return new RateHistogram();
+			}
+			return panes[slot];
+		}
+	}
+}
@@ -0,0 +1,152 @@
+import java.util.*;
+
+/**
+ * Distribution of ride rates in log-linear buckets, after HdrHistogram:
+ * rates below 64 each have their own bucket, and every power of two above
+ * that is split into 32 buckets of equal width, so a percentile is off by
+ * at most 1/64 of the rate. However many rates are added, a histogram never
+ * holds more than 864 counts, and two histograms merge by adding counts.
+ * <p>
+ * Count, minimum, maximum and mean are exact.
+ */
+public final class RateHistogram {
+	private static final int SUB_BITS = 5;
+	private static final int SUB = 1 << SUB_BITS;
+
+	private long[] counts;
+	private long count;
+	private long sum;
+	private int min;
+	private int max;
+
+	public RateHistogram() {
+		this.counts = new long[2 * SUB];
+		this.count = 0;
+		this.sum = 0;
+		this.min = Integer.MAX_VALUE;
+		this.max = 0;
+	}
+
+	private RateHistogram(RateHistogram h) {
+		this.counts = h.counts.clone();
+		this.count = h.count;
+		this.sum = h.sum;
+		this.min = h.min;
+		this.max = h.max;
+	}
+
+	static int bucket(int rate) {
+		if (rate < 2 * SUB) {
+			return rate;
+		}
+		int shift = 31 - Integer.numberOfLeadingZeros(rate) - SUB_BITS;
+		return shift * SUB + (rate >>> shift);
+	}
+
+	/**
+	 * Smallest rate falling in bucket {@code b}.
+	 */
+	static long lowest(int b) {
+		if (b < 2 * SUB) {
+			return b;
+		}
+		int shift = b / SUB - 1;
+		return (long) (b - shift * SUB) << shift;
+	}
+
+	public void add(int rate) {
+		if (rate < 0) {
+			throw new IllegalArgumentException("rate cannot be negative");
+		}
+		int b = bucket(rate);
+		if (b >= counts.length) {
+			// grow to the end of the rate's power of two, so a histogram only pays for the rates it saw
+			counts = Arrays.copyOf(counts, (b | (SUB - 1)) + 1);
+		}
+		counts[b]++;
+		count++;
+		sum += rate;
+		min = Math.min(min, rate);
+		max = Math.max(max, rate);
+	}
+
+	/**
+	 * Adds the rates of {@code other} to this histogram.
+	 */
+	public void merge(RateHistogram other) {
+		if (other.count == 0) {
+			return;
+		}
+		if (other.counts.length > counts.length) {
+			counts = Arrays.copyOf(counts, other.counts.length);
+		}
+		for (int b = 0; b < other.counts.length; b++) {
+			counts[b] += other.counts[b];
+		}
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public RateHistogram copy() {
+		return new RateHistogram(this);
+	}
+
+	void clear() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		min = Integer.MAX_VALUE;
+		max = 0;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Lowest rate added, or 0 for an empty histogram.
+	 */
+	public int getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public double getMean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * Rate at or below which {@code percentile} percent of the rates fall:
+	 * the middle of the bucket holding it, kept within the minimum and the
+	 * maximum; 0 for an empty histogram.
+	 */
+	public int getPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("percentile must be in [0, 100]");
+		}
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int b = 0; b < counts.length; b++) {
+			seen += counts[b];
+			if (seen >= rank) {
+				long middle = (lowest(b) + lowest(b + 1) - 1) / 2;
+				return (int) Math.max(min, Math.min(max, middle));
+			}
+		}
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "RateHistogram[count=" + count + ",min=" + getMin() + ",max=" + max + ",mean=" + getMean()
+				+ ",p50=" + getPercentile(50) + ",p95=" + getPercentile(95) + ",p99=" + getPercentile(99) + "]";
+	}
+}
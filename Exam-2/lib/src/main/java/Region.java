@@ -4,12 +4,16 @@ public abstract class Region {
 	private final String name;
 
 	public Region(String n) {
-		if (n == null || n.isBlank()) {
+		if (isValidName(n) == false) {
 			throw new IllegalArgumentException("Name cannot be null nor blank");
 		}
 		this.name = n;
 	}
 
+	static boolean isValidName(String n) {
+		return n != null && !n.isBlank();
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Streams regions from CSV into a {@link Map}.
+ * <p>
+ * Each line is {@code state,city,kind,population}, where kind is
+ * {@code small} or {@code large}. An empty state puts the city straight into
+ * the map; otherwise the city joins the state of that name, which is created
+ * and added to the map the first time it is seen. An optional first line
+ * {@code state,city,kind,population} is skipped, as are empty lines. Fields
+ * are not quoted.
+ * <p>
+ * Input is read through one fixed size buffer and every row is appended to
+ * the map as soon as it is parsed, so memory stays bounded by the buffer and
+ * the longest line whatever the input size; reading only continues once the
+ * previous chunk has been appended. Rows breaking the rules of
+ * {@link SmallCity} or {@link LargeCity}, malformed rows and lines longer
+ * than {@link #MAX_LINE_BYTES} are counted and skipped rather than thrown.
+ */
+public final class RegionCsvLoader {
+	static final int MAX_LINE_BYTES = 64 * 1024;
+	private static final int CHUNK_BYTES = 64 * 1024;
+	private static final String HEADER = "state,city,kind,population";
+
+	private final Map map;
+	private final NameDictionary names;
+	private final HashMap<String, State> states;
+	private final ByteBuffer chunk;
+	private byte[] line;
+	private int lineLength;
+	private boolean overlong;
+
+	/**
+	 * Loader creating object backed states.
+	 */
+	public RegionCsvLoader(Map map) {
+		this(map, null);
+	}
+
+	/**
+	 * Loader creating columnar states whose city names are encoded in
+	 * {@code names}; {@code null} creates object backed states.
+	 */
+	public RegionCsvLoader(Map map, NameDictionary names) {
+		if (map == null) {
+			throw new IllegalArgumentException("Map cannot be null");
+		}
+		this.map = map;
+		this.names = names;
+		this.states = new HashMap<>();
+		this.chunk = ByteBuffer.allocateDirect(CHUNK_BYTES);
+		this.line = new byte[256];
+		this.lineLength = 0;
+		this.overlong = false;
+	}
+
+	public Report load(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return load(channel);
+		}
+	}
+
+	/**
+	 * Loads every row of {@code in}; the channel is not closed.
+	 */
+	public Report load(ReadableByteChannel in) throws IOException {
+		Report report = new Report();
+		long start = System.nanoTime();
+		chunk.clear();
+		lineLength = 0;
+		overlong = false;
+		while (in.read(chunk) >= 0) {
+			chunk.flip();
+			while (chunk.hasRemaining()) {
+				byte b = chunk.get();
+				if (b == '\n') {
+					endLine(report);
+				}
+				else if (lineLength == MAX_LINE_BYTES) {
+					overlong = true;
+				}
+				else {
+					if (lineLength == line.length) {
+						line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_BYTES));
+					}
+					line[lineLength++] = b;
+				}
+			}
+			chunk.clear();
+		}
+		endLine(report);
+		report.elapsedNanos = System.nanoTime() - start;
+		return report;
+	}
+
+	private void endLine(Report report) {
+		int n = lineLength;
+		if (n > 0 && line[n - 1] == '\r') {
+			n--;
+		}
+		boolean skip = overlong;
+		lineLength = 0;
+		overlong = false;
+		if (n == 0 && !skip) {
+			return;
+		}
+		if (!skip && report.rows == 0 && report.header == false && isHeader(n)) {
+			report.header = true;
+			return;
+		}
+		report.rows++;
+		if (skip || !parse(n)) {
+			report.rejected++;
+		}
+	}
+
+	private boolean isHeader(int n) {
+		return n == HEADER.length() && HEADER.equals(text(0, n));
+	}
+
+	private boolean parse(int n) {
+		int c1 = indexOf(',', 0, n);
+		int c2 = c1 < 0 ? -1 : indexOf(',', c1 + 1, n);
+		int c3 = c2 < 0 ? -1 : indexOf(',', c2 + 1, n);
+		if (c3 < 0 || indexOf(',', c3 + 1, n) >= 0) {
+			return false;
+		}
+		String stateName = text(0, c1);
+		String cityName = text(c1 + 1, c2);
+		long p = number(c3 + 1, n);
+		if (p == Long.MIN_VALUE || !City.isValidPopulation((int) p) || !Region.isValidName(cityName)) {
+			return false;
+		}
+		City city;
+		String kind = text(c2 + 1, c3);
+		if (kind.equals("small") && SmallCity.isInRange((int) p)) {
+			city = new SmallCity(cityName, (int) p);
+		}
+		else if (kind.equals("large") && LargeCity.isInRange((int) p)) {
+			city = new LargeCity(cityName, (int) p);
+		}
+		else {
+			return false;
+		}
+		if (stateName.isEmpty()) {
+			map.addRegions(city);
+			return true;
+		}
+		if (!Region.isValidName(stateName)) {
+			return false;
+		}
+		State s = states.get(stateName);
+		if (s == null) {
+			s = names == null ? new State(stateName) : State.columnar(stateName, names);
+			states.put(stateName, s);
+			map.addRegions(s);
+		}
+		s.addCities(city);
+		return true;
+	}
+
+	private int indexOf(char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (line[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private String text(int from, int to) {
+		return new String(line, from, to - from, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Parses a decimal integer; anything else, or a value outside the int
+	 * range, comes back as {@code Long.MIN_VALUE}.
+	 */
+	private long number(int from, int to) {
+		boolean negative = from < to && line[from] == '-';
+		int i = negative ? from + 1 : from;
+		if (i == to || to - i > 10) {
+			return Long.MIN_VALUE;
+		}
+		long v = 0;
+		for (; i < to; i++) {
+			int d = line[i] - '0';
+			if (d < 0 || d > 9) {
+				return Long.MIN_VALUE;
+			}
+			v = v * 10 + d;
+		}
+		v = negative ? -v : v;
+		return v == (int) v ? v : Long.MIN_VALUE;
+	}
+
+	/**
+	 * Outcome of one {@link #load} call.
+	 */
+	public static final class Report {
+		private long rows;
+		private long rejected;
+		private boolean header;
+		private long elapsedNanos;
+
+		private Report() {
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getAccepted() {
+			return rows - rejected;
+		}
+
+		public long getRejected() {
+			return rejected;
+		}
+
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		public double getRowsPerSecond() {
+			return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+		}
+
+		@Override
+		public String toString() {
+			return "Report[rows=" + rows + ",rejected=" + rejected + ",rowsPerSecond=" + (long) getRowsPerSecond() + "]";
+		}
+	}
+}
@@ -0,0 +1,49 @@
+
+/**
+ * Visitor dispatch used by map traversals. Regions whose class is exactly
+ * {@link State}, {@link SmallCity} or {@link LargeCity} are dispatched by a
+ * class check and a direct call of the matching {@code visit} overload, which
+ * is what their {@code accept} does, and cities are reached by index. This
+ * keeps the hot loop free of iterators and megamorphic {@code accept} calls,
+ * so visiting an object backed region allocates nothing. Any other class,
+ * including subclasses that may override {@code accept}, goes through
+ * {@code accept} as usual.
+ */
+final class RegionDispatch {
+	private RegionDispatch() {
+	}
+
+	static void dispatch(Region r, IRegionVisitor v) {
+		Class<?> type = r.getClass();
+		if (type == State.class) {
+			State s = (State) r;
+			v.visit(s);
+			dispatchCities(s.store(), 0, s.store().size(), v);
+		}
+		else if (type == SmallCity.class) {
+			v.visit((SmallCity) r);
+		}
+		else if (type == LargeCity.class) {
+			v.visit((LargeCity) r);
+		}
+		else {
+			r.accept(v);
+		}
+	}
+
+	static void dispatchCities(CityStore cities, int from, int to, IRegionVisitor v) {
+		for (int i = from; i < to; i++) {
+			City c = cities.get(i);
+			Class<?> type = c.getClass();
+			if (type == SmallCity.class) {
+				v.visit((SmallCity) c);
+			}
+			else if (type == LargeCity.class) {
+				v.visit((LargeCity) c);
+			}
+			else {
+				c.accept(v);
+			}
+		}
+	}
+}
@@ -0,0 +1,439 @@
+import java.util.*;
+
+/**
+ * Places joined by {@link CarRide}s, each ride a directed edge from its
+ * start to its destination costing its rate, answering cheapest path
+ * queries with Dijkstra's algorithm.
+ * <p>
+ * Places get dense ids from a {@link NameDictionary}, and edges are kept in
+ * compressed sparse rows: the edges leaving place {@code p} are
+ * {@code offsets[p]} to {@code offsets[p + 1]} of the edge arrays, and
+ * reverse rows list the edges entering each place. Added rides wait in
+ * pending lists, chained per start and per destination, that queries read
+ * next to the rows; a query finding more pending edges than an eighth of
+ * the rows first rebuilds the rows with a counting sort, so an insert is
+ * amortized O(1) and a bulk load linear.
+ * <p>
+ * A query searches forward from the start and backward from the
+ * destination at once, always growing the side with the cheaper frontier,
+ * and stops once the two frontiers together cost more than the cheapest
+ * path found through a place both sides reached. Each side keeps a binary
+ * heap of place ids indexed by place, so a cheaper path lowers a place
+ * instead of queueing it again; its arrays are kept between queries and
+ * reset by stamping, so a query touches only the places it reaches. Not
+ * thread-safe.
+ */
+public final class RideGraph {
+	private static final int MIN_PENDING = 1024;
+	private static final int NONE = Integer.MIN_VALUE;
+
+	private final NameDictionary places;
+	// rows; an edge is e >= 0 here and -(i + 1) for pending edge i
+	private int rows;
+	private int[] offsets;
+	private int[] origins;
+	private int[] targets;
+	private int[] costs;
+	private CarRide[] rides;
+	private int[] reverseOffsets;
+	private int[] reverseEdges;
+	// pending edges, chained from heads[place] and reverseHeads[place]
+	private int pending;
+	private int[] heads;
+	private int[] reverseHeads;
+	private int[] next;
+	private int[] reverseNext;
+	private int[] sources;
+	private int[] destinations;
+	private CarRide[] added;
+	private final Search forward;
+	private final Search backward;
+	// cheapest path found by the running search, through meet
+	private long best;
+	private int meet;
+
+	public RideGraph() {
+		this(new NameDictionary());
+	}
+
+	/**
+	 * Graph numbering places in {@code places}.
+	 */
+	public RideGraph(NameDictionary places) {
+		if (places == null) {
+			throw new IllegalArgumentException("places cannot be null");
+		}
+		this.places = places;
+		this.rows = 0;
+		this.offsets = new int[1];
+		this.origins = new int[0];
+		this.targets = new int[0];
+		this.costs = new int[0];
+		this.rides = new CarRide[0];
+		this.reverseOffsets = new int[1];
+		this.reverseEdges = new int[0];
+		this.pending = 0;
+		this.heads = new int[16];
+		this.reverseHeads = new int[16];
+		this.next = new int[16];
+		this.reverseNext = new int[16];
+		this.sources = new int[16];
+		this.destinations = new int[16];
+		this.added = new CarRide[16];
+		this.forward = new Search();
+		this.backward = new Search();
+		this.best = Long.MAX_VALUE;
+		this.meet = -1;
+	}
+
+	public void add(CarRide ride) {
+		if (ride == null) {
+			throw new IllegalArgumentException("ride cannot be null");
+		}
+		int from = places.id(ride.getFrom(), ride.getFromId());
+		int to = places.id(ride.getTo(), ride.getToId());
+		growHeads();
+		if (pending == added.length) {
+			int capacity = pending * 2;
+			next = Arrays.copyOf(next, capacity);
+			reverseNext = Arrays.copyOf(reverseNext, capacity);
+			sources = Arrays.copyOf(sources, capacity);
+			destinations = Arrays.copyOf(destinations, capacity);
+			added = Arrays.copyOf(added, capacity);
+		}
+		// heads hold the pending index + 1, 0 ending the chain
+		next[pending] = heads[from];
+		reverseNext[pending] = reverseHeads[to];
+		sources[pending] = from;
+		destinations[pending] = to;
+		added[pending] = ride;
+		pending++;
+		heads[from] = pending;
+		reverseHeads[to] = pending;
+	}
+
+	public void addAll(Collection<CarRide> rides) {
+		for (CarRide r : rides) {
+			add(r);
+		}
+	}
+
+	public int getPlaceCount() {
+		return places.size();
+	}
+
+	public int getRideCount() {
+		return offsets[rows] + pending;
+	}
+
+	/**
+	 * Cost of the cheapest path from {@code from} to {@code to}, 0 from a
+	 * place to itself, or -1 if there is none.
+	 */
+	public long cost(String from, String to) {
+		int through = search(from, to);
+		return through < 0 ? -1 : best;
+	}
+
+	/**
+	 * Rides of the cheapest path from {@code from} to {@code to}, in the
+	 * order they are taken; empty if there is none or the places are the
+	 * same.
+	 */
+	public List<CarRide> path(String from, String to) {
+		ArrayList<CarRide> path = new ArrayList<>();
+		int through = search(from, to);
+		if (through < 0) {
+			return path;
+		}
+		for (int e = forward.via[through]; e != NONE; e = forward.via[origin(e)]) {
+			path.add(ride(e));
+		}
+		Collections.reverse(path);
+		for (int e = backward.via[through]; e != NONE; e = backward.via[target(e)]) {
+			path.add(ride(e));
+		}
+		return path;
+	}
+
+	private int origin(int e) {
+		return e >= 0 ? origins[e] : sources[-e - 1];
+	}
+
+	private int target(int e) {
+		return e >= 0 ? targets[e] : destinations[-e - 1];
+	}
+
+	private CarRide ride(int e) {
+		return e >= 0 ? rides[e] : added[-e - 1];
+	}
+
+	/**
+	 * Searches from both ends; returns the place the cheapest path runs
+	 * through, or -1 if {@code to} cannot be reached from {@code from}.
+	 */
+	private int search(String from, String to) {
+		int source = places.find(from);
+		int target = places.find(to);
+		if (source < 0 || target < 0) {
+			return -1;
+		}
+		// a shared dictionary may have numbered places since the last add
+		growHeads();
+		if (pending > Math.max(MIN_PENDING, offsets[rows] / 8)) {
+			rebuild();
+		}
+		int n = places.size();
+		forward.start(n, source);
+		backward.start(n, target);
+		best = source == target ? 0 : Long.MAX_VALUE;
+		meet = source == target ? source : -1;
+		while (forward.size > 0 && backward.size > 0) {
+			long f = forward.distances[forward.heap[0]];
+			long b = backward.distances[backward.heap[0]];
+			if (f + b >= best) {
+				break;
+			}
+			if (f <= b) {
+				int p = forward.pop();
+				if (p < rows) {
+					for (int e = offsets[p]; e < offsets[p + 1]; e++) {
+						relax(forward, backward, p, targets[e], costs[e], e);
+					}
+				}
+				for (int i = heads[p]; i != 0; i = next[i - 1]) {
+					relax(forward, backward, p, destinations[i - 1], added[i - 1].getRate(), -i);
+				}
+			}
+			else {
+				int p = backward.pop();
+				if (p < rows) {
+					for (int k = reverseOffsets[p]; k < reverseOffsets[p + 1]; k++) {
+						int e = reverseEdges[k];
+						relax(backward, forward, p, origins[e], costs[e], e);
+					}
+				}
+				for (int i = reverseHeads[p]; i != 0; i = reverseNext[i - 1]) {
+					relax(backward, forward, p, sources[i - 1], added[i - 1].getRate(), -i);
+				}
+			}
+		}
+		return meet;
+	}
+
+	/**
+	 * Makes room in the chains of pending edges for every place numbered.
+	 */
+	private void growHeads() {
+		if (heads.length < places.size()) {
+			int capacity = Math.max(places.size(), heads.length * 2);
+			heads = Arrays.copyOf(heads, capacity);
+			reverseHeads = Arrays.copyOf(reverseHeads, capacity);
+		}
+	}
+
+	/**
+	 * Relaxes edge {@code e} from {@code p} to {@code q} on {@code side},
+	 * and keeps the path through {@code q} if the other side reached it and
+	 * it is the cheapest yet.
+	 */
+	private void relax(Search side, Search other, int p, int q, int cost, int e) {
+		long d = side.distances[p] + cost;
+		if (side.relax(q, d, e) && other.has(q) && d + other.distances[q] < best) {
+			best = d + other.distances[q];
+			meet = q;
+		}
+	}
+
+	/**
+	 * Moves the pending edges into the rows with a counting sort by start,
+	 * then lists every edge by destination in the reverse rows.
+	 */
+	private void rebuild() {
+		int n = places.size();
+		int edges = offsets[rows] + pending;
+		int[] o = new int[n + 1];
+		for (int p = 0; p < rows; p++) {
+			o[p + 1] = offsets[p + 1] - offsets[p];
+		}
+		for (int i = 0; i < pending; i++) {
+			o[sources[i] + 1]++;
+		}
+		for (int p = 0; p < n; p++) {
+			o[p + 1] += o[p];
+		}
+		int[] s = new int[edges];
+		int[] t = new int[edges];
+		int[] c = new int[edges];
+		CarRide[] r = new CarRide[edges];
+		int[] fill = Arrays.copyOf(o, n);
+		for (int p = 0; p < rows; p++) {
+			int length = offsets[p + 1] - offsets[p];
+			System.arraycopy(origins, offsets[p], s, fill[p], length);
+			System.arraycopy(targets, offsets[p], t, fill[p], length);
+			System.arraycopy(costs, offsets[p], c, fill[p], length);
+			System.arraycopy(rides, offsets[p], r, fill[p], length);
+			fill[p] += length;
+		}
+		for (int i = 0; i < pending; i++) {
+			int e = fill[sources[i]]++;
+			s[e] = sources[i];
+			t[e] = destinations[i];
+			c[e] = added[i].getRate();
+			r[e] = added[i];
+		}
+		int[] ro = new int[n + 1];
+		for (int e = 0; e < edges; e++) {
+			ro[t[e] + 1]++;
+		}
+		for (int p = 0; p < n; p++) {
+			ro[p + 1] += ro[p];
+		}
+		int[] re = new int[edges];
+		fill = Arrays.copyOf(ro, n);
+		for (int e = 0; e < edges; e++) {
+			re[fill[t[e]]++] = e;
+		}
+		rows = n;
+		offsets = o;
+		origins = s;
+		targets = t;
+		costs = c;
+		rides = r;
+		reverseOffsets = ro;
+		reverseEdges = re;
+		pending = 0;
+		Arrays.fill(heads, 0);
+		Arrays.fill(reverseHeads, 0);
+		Arrays.fill(added, null);
+	}
+
+	/**
+	 * One side of a search: the cost and last edge of the cheapest path
+	 * found to every place it reached, and a heap of the places not settled
+	 * yet, cheapest first.
+	 */
+	private static final class Search {
+		private int stamp;
+		private int[] stamps;
+		private long[] distances;
+		private int[] via;
+		private int[] heap;
+		private int[] positions;
+		private int size;
+
+		private Search() {
+			this.stamp = 0;
+			this.stamps = new int[0];
+			this.distances = new long[0];
+			this.via = new int[0];
+			this.heap = new int[0];
+			this.positions = new int[0];
+			this.size = 0;
+		}
+
+		private void start(int places, int p) {
+			if (stamps.length < places) {
+				int capacity = Math.max(places, stamps.length * 2);
+				stamps = Arrays.copyOf(stamps, capacity);
+				distances = Arrays.copyOf(distances, capacity);
+				via = Arrays.copyOf(via, capacity);
+				heap = Arrays.copyOf(heap, capacity);
+				positions = Arrays.copyOf(positions, capacity);
+			}
+			if (++stamp == 0) {
+				Arrays.fill(stamps, 0);
+				stamp = 1;
+			}
+			size = 0;
+			reach(p, 0, NONE);
+		}
+
+		private boolean has(int p) {
+			return stamps[p] == stamp;
+		}
+
+		/**
+		 * Lowers the cost of {@code p} to {@code d} through {@code edge} if
+		 * that is cheaper; returns whether it was.
+		 */
+		private boolean relax(int p, long d, int edge) {
+			if (stamps[p] != stamp) {
+				reach(p, d, edge);
+				return true;
+			}
+			if (d < distances[p] && positions[p] >= 0) {
+				distances[p] = d;
+				via[p] = edge;
+				up(positions[p]);
+				return true;
+			}
+			return false;
+		}
+
+		private void reach(int p, long d, int edge) {
+			stamps[p] = stamp;
+			distances[p] = d;
+			via[p] = edge;
+			heap[size] = p;
+			positions[p] = size;
+			up(size++);
+		}
+
+		/**
+		 * Removes the cheapest place; its position becomes -1 so it is never
+		 * lowered again.
+		 */
+		private int pop() {
+			int p = heap[0];
+			positions[p] = -1;
+			size--;
+			if (size > 0) {
+				heap[0] = heap[size];
+				positions[heap[0]] = 0;
+				down(0);
+			}
+			return p;
+		}
+
+		private void up(int i) {
+			int p = heap[i];
+			long d = distances[p];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				int q = heap[parent];
+				if (distances[q] <= d) {
+					break;
+				}
+				heap[i] = q;
+				positions[q] = i;
+				i = parent;
+			}
+			heap[i] = p;
+			positions[p] = i;
+		}
+
+		private void down(int i) {
+			int p = heap[i];
+			long d = distances[p];
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && distances[heap[child + 1]] < distances[heap[child]]) {
+					child++;
+				}
+				int q = heap[child];
+				if (distances[q] >= d) {
+					break;
+				}
+				heap[i] = q;
+				positions[q] = i;
+				i = child;
+			}
+			heap[i] = p;
+			positions[p] = i;
+		}
+	}
+}
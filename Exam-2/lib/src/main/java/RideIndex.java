@@ -0,0 +1,267 @@
+import java.util.*;
+
+/**
+ * {@link CarRide}s indexed by route, the pair of their start and
+ * destination, and ordered by rate within each route.
+ * <p>
+ * A route keeps its rides in blocks of at most {@link #BLOCK} rides sorted
+ * by rate, the blocks themselves in rate order. Finding a rate is a binary
+ * search over the blocks and one within a block, so a query costs
+ * O(log n) plus the rides it returns, and an insert or remove moves at most
+ * one block's worth of entries. A full block is split in two and an empty
+ * one is dropped; small routes start with small blocks, so millions of
+ * routes with a few rides each stay cheap.
+ * <p>
+ * Rides of equal rate on a route are kept in the order they were added. A
+ * ride is identified by reference; adding the same ride twice indexes it
+ * twice. Not thread-safe.
+ */
+public final class RideIndex {
+	static final int BLOCK = 1024;
+
+	private final HashMap<String, HashMap<String, Route>> routes;
+	private long size;
+
+	public RideIndex() {
+		this.routes = new HashMap<>();
+		this.size = 0;
+	}
+
+	public void add(CarRide ride) {
+		if (ride == null) {
+			throw new IllegalArgumentException("ride cannot be null");
+		}
+		routes.computeIfAbsent(ride.getFrom(), f -> new HashMap<>())
+				.computeIfAbsent(ride.getTo(), t -> new Route())
+				.add(ride);
+		size++;
+	}
+
+	/**
+	 * Removes {@code ride}; returns false if it is not indexed.
+	 */
+	public boolean remove(CarRide ride) {
+		if (ride == null) {
+			return false;
+		}
+		HashMap<String, Route> to = routes.get(ride.getFrom());
+		Route route = to == null ? null : to.get(ride.getTo());
+		if (route == null || route.remove(ride) == false) {
+			return false;
+		}
+		if (route.size == 0) {
+			to.remove(ride.getTo());
+			if (to.isEmpty()) {
+				routes.remove(ride.getFrom());
+			}
+		}
+		size--;
+		return true;
+	}
+
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Number of rides from {@code from} to {@code to}.
+	 */
+	public int size(String from, String to) {
+		Route route = route(from, to);
+		return route == null ? 0 : route.size;
+	}
+
+	/**
+	 * The {@code k} cheapest rides from {@code from} to {@code to}, cheapest
+	 * first; fewer if the route has fewer.
+	 */
+	public List<CarRide> cheapest(String from, String to, int k) {
+		if (k < 0) {
+			throw new IllegalArgumentException("k cannot be negative");
+		}
+		List<CarRide> list = new ArrayList<>();
+		Route route = route(from, to);
+		if (route != null) {
+			route.collect(0, Integer.MAX_VALUE, k, list);
+		}
+		return list;
+	}
+
+	/**
+	 * Rides from {@code from} to {@code to} with a rate in
+	 * {@code [lower, upper]}, cheapest first.
+	 */
+	public List<CarRide> range(String from, String to, int lower, int upper) {
+		List<CarRide> list = new ArrayList<>();
+		Route route = route(from, to);
+		if (route != null && lower <= upper) {
+			route.collect(lower, upper, Integer.MAX_VALUE, list);
+		}
+		return list;
+	}
+
+	private Route route(String from, String to) {
+		HashMap<String, Route> m = routes.get(from);
+		return m == null ? null : m.get(to);
+	}
+
+	private static final class Route {
+		private Block[] blocks;
+		private int count;
+		private int size;
+
+		private Route() {
+			this.blocks = new Block[] { new Block(4) };
+			this.count = 1;
+			this.size = 0;
+		}
+
+		/**
+		 * First block whose last rate is at least {@code rate}, or greater
+		 * when {@code after}; {@code count} if there is none.
+		 */
+		private int block(int rate, boolean after) {
+			int lo = 0;
+			int hi = count;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				Block b = blocks[mid];
+				int last = b.rates[b.size - 1];
+				if (last < rate || (after && last == rate)) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		private void add(CarRide ride) {
+			int rate = ride.getRate();
+			int b = size == 0 ? 0 : Math.min(block(rate, true), count - 1);
+			Block block = blocks[b];
+			int i = block.bound(rate, true);
+			if (block.size == BLOCK) {
+				Block upper = block.split();
+				insert(b + 1, upper);
+				if (i > block.size) {
+					i -= block.size;
+					block = upper;
+				}
+			}
+			block.insert(i, rate, ride);
+			size++;
+		}
+
+		private boolean remove(CarRide ride) {
+			int rate = ride.getRate();
+			for (int b = block(rate, false); b < count; b++) {
+				Block block = blocks[b];
+				for (int i = block.bound(rate, false); i < block.size && block.rates[i] == rate; i++) {
+					if (block.rides[i] == ride) {
+						block.delete(i);
+						if (block.size == 0 && count > 1) {
+							System.arraycopy(blocks, b + 1, blocks, b, count - b - 1);
+							blocks[--count] = null;
+						}
+						size--;
+						return true;
+					}
+				}
+				if (block.size > 0 && block.rates[block.size - 1] > rate) {
+					break;
+				}
+			}
+			return false;
+		}
+
+		private void insert(int b, Block block) {
+			if (count == blocks.length) {
+				blocks = Arrays.copyOf(blocks, count * 2);
+			}
+			System.arraycopy(blocks, b, blocks, b + 1, count - b);
+			blocks[b] = block;
+			count++;
+		}
+
+		private void collect(int lower, int upper, int k, List<CarRide> list) {
+			if (size == 0) {
+				return;
+			}
+			for (int b = block(lower, false); b < count; b++) {
+				Block block = blocks[b];
+				for (int i = block.bound(lower, false); i < block.size; i++) {
+					if (block.rates[i] > upper || list.size() == k) {
+						return;
+					}
+					list.add(block.rides[i]);
+				}
+			}
+		}
+	}
+
+	private static final class Block {
+		private int[] rates;
+		private CarRide[] rides;
+		private int size;
+
+		private Block(int capacity) {
+			this.rates = new int[capacity];
+			this.rides = new CarRide[capacity];
+			this.size = 0;
+		}
+
+		/**
+		 * First index whose rate is at least {@code rate}, or greater when
+		 * {@code after}.
+		 */
+		private int bound(int rate, boolean after) {
+			int lo = 0;
+			int hi = size;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (rates[mid] < rate || (after && rates[mid] == rate)) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		private void insert(int i, int rate, CarRide ride) {
+			if (size == rates.length) {
+				int capacity = Math.min(size * 2, BLOCK);
+				rates = Arrays.copyOf(rates, capacity);
+				rides = Arrays.copyOf(rides, capacity);
+			}
+			System.arraycopy(rates, i, rates, i + 1, size - i);
+			System.arraycopy(rides, i, rides, i + 1, size - i);
+			rates[i] = rate;
+			rides[i] = ride;
+			size++;
+		}
+
+		private void delete(int i) {
+			System.arraycopy(rates, i + 1, rates, i, size - i - 1);
+			System.arraycopy(rides, i + 1, rides, i, size - i - 1);
+			rides[--size] = null;
+		}
+
+		/**
+		 * Moves the upper half of this full block into a new block.
+		 */
+		private Block split() {
+			int half = size / 2;
+			Block upper = new Block(BLOCK);
+			upper.size = size - half;
+			System.arraycopy(rates, half, upper.rates, 0, upper.size);
+			System.arraycopy(rides, half, upper.rides, 0, upper.size);
+			Arrays.fill(rides, half, size, null);
+			size = half;
+			return upper;
+		}
+	}
+}
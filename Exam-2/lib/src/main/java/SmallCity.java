@@ -2,11 +2,15 @@ class SmallCity extends City {
 	
 	public SmallCity (String n, int p) {
 		super(n, p);
-		if (p > 250000) {
+		if (isInRange(p) == false) {
 			throw new IllegalArgumentException ("Population not in range (0,250000) [" + p + "]");
 		}
 	}
 
+	static boolean isInRange(int p) {
+		return p >= 0 && p <= 250000;
+	}
+
 	@Override
 	public void accept(IRegionVisitor visitor) {
 		visitor.visit(this);
@@ -1,24 +1,34 @@
 import java.util.ArrayList;
 import java.util.List;
 
-public final class Stack<T> {
+public final class Stack<T> implements IStack<T> {
 	private List<T> array = new ArrayList<>();
 
+	@Override
 	public T peek() {
 		return array.get( getSize()-1 );
 	}
+	@Override
+	public T get(int i) {
+		return array.get( i );
+	}
+	@Override
 	public T pop() {
 		return array.remove( getSize()-1 );
 	}
+	@Override
 	public boolean push(T o) {
 		return array.add( o );
 	}
+	@Override
 	public boolean isEmpty() {
 		return array.isEmpty();
 	}
+	@Override
 	public int getSize() {
 		return array.size();
 	}
+	@Override
 	public void clear() {
 		array.clear();
 	}
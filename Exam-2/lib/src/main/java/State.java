@@ -1,17 +1,37 @@
-import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
-
 import java.util.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
 
 
 public class State extends Region{
-	private List<City> cities;
+	private final CityStore cities;
 	
 	public State (String n) {
+		this (n, new ListCityStore());
+	}
+	
+	private State (String n, CityStore store) {
 		super (n);
-		this.cities= new ArrayList<>();
+		this.cities= store;
+	}
+	
+	/**
+	 * Creates a state that keeps its cities in primitive columns instead of
+	 * as objects. It only accepts {@link SmallCity} and {@link LargeCity}, and
+	 * {@link #getCities()} returns copies built from the columns, equal to but
+	 * not the same instances as the cities that were added.
+	 */
+	public static State columnar (String n) {
+		return columnar(n, new NameDictionary());
+	}
+	
+	/**
+	 * Creates a columnar state whose city names are encoded in {@code names},
+	 * which may be shared with other states.
+	 */
+	public static State columnar (String n, NameDictionary names) {
+		if (names == null) {
+			throw new IllegalArgumentException("Names cannot be null");
+		}
+		return new State(n, new ColumnarCityStore(names));
 	}
 	
 	public void addCities(City ...cities) {
@@ -31,18 +51,56 @@ public class State extends Region{
 	}
 	
 	public List<City> getCities(){
-		List<City> temp = new ArrayList<>();
-		for (City c : cities) {
-			temp.add(c);
+		return cities.copy();
+	}
+	
+	/**
+	 * Returns the cities of this state with a population in {@code [l, u]},
+	 * in the order they were added.
+	 */
+	public List<City> getCitiesInRange(int l, int u) {
+		if (l<0 || u<0) {
+			throw new IllegalArgumentException("Range must have positive values");
+		}
+		if (l>u) {
+			throw new IllegalArgumentException("Range must be incremental");
 		}
-		return temp;
+		return cities.range(l, u);
 	}
+	
+	/**
+	 * Returns the {@code i}-th city without copying the city list.
+	 */
+	public City getCity(int i) {
+		return cities.get(i);
+	}
+	
+	public int getCityCount() {
+		return cities.size();
+	}
+	
+	/**
+	 * Population aggregates over all cities of this state, kept up to date
+	 * by {@link #addCities}; min and max are 0 for a state without cities.
+	 */
+	public long getTotalPopulation() {
+		return cities.totalPopulation();
+	}
+	public int getMinPopulation() {
+		return cities.minPopulation();
+	}
+	public int getMaxPopulation() {
+		return cities.maxPopulation();
+	}
+	
+	CityStore store() {
+		return cities;
+	}
+	
     @Override
     public void accept(IRegionVisitor visitor) {
     	visitor.visit(this);
-    	for (City c : cities) {
-    		c.accept(visitor);
-    	}
+    	RegionDispatch.dispatchCities(cities, 0, cities.size(), visitor);
         
     }
 }
@@ -237,5 +237,177 @@ class CarRideTest {
 			assertThat( str2 ).isEqualTo( "CarRide[from=newport news,to=hampton,rate=25]" );
 			assertThat( str3 ).isEqualTo( "CarRide[from=norfolk,to=virginia beach,rate=0]" );
 		}
+		@Test
+		void testBatch() {
+			var batch  = new CarRideBatch();
+			var from   = new String[]{ "hampton", new String( "hampton" ), null,      "norfolk", " "        };
+			var to     = new String[]{ "norfolk", "suffolk",              "yorktown", "hampton", "poquoson" };
+			var rate   = new int   []{ 30,        42,                     10,         -1,        5          };
+
+			var result = batch.build( from, to, rate );
+			assertThat( result.getAccepted() ).isEqualTo( 2 );
+			assertThat( result.getRejected() ).isEqualTo( 3 );
+
+			var rides  = result.getRides();
+			assertThat( rides.get( 0 ).toString() ).isEqualTo( "CarRide[from=hampton,to=norfolk,rate=30]" );
+			assertThat( rides.get( 1 ).toString() ).isEqualTo( "CarRide[from=hampton,to=suffolk,rate=42]" );
+			assertThat( batch.getPlaces().size() ).isEqualTo( 3 );
+
+			assertThat( result.getRejectedRow( 0 )).isEqualTo( 2 );
+			assertThat( result.getReasons    ( 0 )).containsExactly( CarRideBatch.Reason.MISSING_FROM );
+			assertThat( result.getRejectedRow( 1 )).isEqualTo( 3 );
+			assertThat( result.getReasons    ( 1 )).containsExactly( CarRideBatch.Reason.NEGATIVE_RATE );
+			assertThat( result.getRejectedRow( 2 )).isEqualTo( 4 );
+			assertThat( result.getReasons    ( 2 )).containsExactly( CarRideBatch.Reason.MISSING_FROM );
+
+			var t = assertThrows( 
+					IllegalArgumentException.class, 
+					() -> batch.build( from, to, new int[ 1 ] ));
+			assertThat( t.getMessage() ).isEqualTo( "columns must have the same length" );
+		}
+		@Test
+		void testRideIndex() {
+			var index = new RideIndex();
+			var a     = new CarRide.Builder().from( "hampton" ).to( "norfolk" ).rate( 30 ).build();
+			var b     = new CarRide.Builder().from( "hampton" ).to( "norfolk" ).rate( 12 ).build();
+			var c     = new CarRide.Builder().from( "hampton" ).to( "norfolk" ).rate( 30 ).build();
+			var d     = new CarRide.Builder().from( "norfolk" ).to( "hampton" ).rate(  5 ).build();
+			for (var ride : List.of( a, b, c, d )) {
+				index.add( ride );
+			}
+			assertThat( index.size() ).isEqualTo( 4 );
+			assertThat( index.size    ( "hampton", "norfolk"         )).isEqualTo( 3 );
+			assertThat( index.cheapest( "hampton", "norfolk", 2      )).containsExactly( b, a ).inOrder();
+			assertThat( index.cheapest( "hampton", "norfolk", 9      )).containsExactly( b, a, c ).inOrder();
+			assertThat( index.range   ( "hampton", "norfolk", 13, 30 )).containsExactly( a, c ).inOrder();
+			assertThat( index.range   ( "hampton", "norfolk", 31, 99 )).isEmpty();
+			assertThat( index.cheapest( "norfolk", "suffolk", 1      )).isEmpty();
+
+			assertThat( index.remove( a )).isTrue();
+			assertThat( index.remove( a )).isFalse();
+			assertThat( index.cheapest( "hampton", "norfolk", 9      )).containsExactly( b, c ).inOrder();
+			assertThat( index.remove( d )).isTrue();
+			assertThat( index.size    ( "norfolk", "hampton"         )).isEqualTo( 0 );
+			assertThat( index.size() ).isEqualTo( 2 );
+		}
+		@Test
+		void testRideGraph() {
+			var graph = new RideGraph();
+			var ab    = new CarRide.Builder().from( "hampton" ).to( "norfolk"  ).rate( 10 ).build();
+			var bc    = new CarRide.Builder().from( "norfolk" ).to( "suffolk"  ).rate( 15 ).build();
+			var ac    = new CarRide.Builder().from( "hampton" ).to( "suffolk"  ).rate( 30 ).build();
+			var cd    = new CarRide.Builder().from( "suffolk" ).to( "yorktown" ).rate(  5 ).build();
+			graph.addAll( List.of( ab, bc, ac, cd ));
+
+			assertThat( graph.cost( "hampton", "yorktown" )).isEqualTo( 30 );
+			assertThat( graph.path( "hampton", "yorktown" )).containsExactly( ab, bc, cd ).inOrder();
+			assertThat( graph.cost( "yorktown", "hampton" )).isEqualTo( -1 );
+			assertThat( graph.path( "yorktown", "hampton" )).isEmpty();
+			assertThat( graph.cost( "hampton", "hampton"  )).isEqualTo( 0 );
+			assertThat( graph.cost( "hampton", "poquoson" )).isEqualTo( -1 );
+
+			var shortcut = new CarRide.Builder().from( "hampton" ).to( "yorktown" ).rate( 12 ).build();
+			graph.add( shortcut );
+			assertThat( graph.path( "hampton", "yorktown" )).containsExactly( shortcut );
+			assertThat( graph.getRideCount () ).isEqualTo( 5 );
+			assertThat( graph.getPlaceCount() ).isEqualTo( 4 );
+		}
+		@Test
+		void testRideGraphSharingGrowingDictionary() {
+			var names = new NameDictionary();
+			var graph = new RideGraph( names );
+			var ab    = new CarRide.Builder().from( "a" ).to( "b" ).rate( 7 ).build();
+			graph.add( ab );
+			// places numbered by someone else after the last ride was added
+			for (int i = 0; i < 40; i++) {
+				names.id( "city" + i );
+			}
+
+			assertThat( graph.cost( "a",      "city39" )).isEqualTo( -1 );
+			assertThat( graph.cost( "city39", "b"      )).isEqualTo( -1 );
+			assertThat( graph.path( "city39", "b"      )).isEmpty();
+			assertThat( graph.cost( "a",      "b"      )).isEqualTo( 7 );
+		}
+		@Test
+		void testLocations() {
+			var va = new State( "VA" );
+			va.addCities( new LargeCity( "virginia beach", 450_000 ), new LargeCity( "norfolk", 250_001 ), new SmallCity( "hampton", 137_000 ));
+			var map = new Map();
+			map.addRegions( va, new SmallCity( "poquoson", 12_000 ));
+
+			var locations = new Locations();
+			locations.add( map );
+			assertThat( locations.isState( "VA"       )).isTrue();
+			assertThat( locations.isState( "poquoson" )).isFalse();
+			assertThat( locations.id     ( "suffolk"  )).isEqualTo( -1 );
+
+			var batch  = new CarRideBatch( locations.getNames() );
+			var rides  = batch.build( new String[]{ "norfolk", "hampton", "virginia beach", "poquoson" },
+			                          new String[]{ "hampton", "norfolk", "poquoson",       "norfolk"  },
+			                          new int   []{ 10,        12,        30,               8          } ).getRides();
+			var large  = locations.getLargeCities( "VA" );
+			assertThat( large.cardinality() ).isEqualTo( 2 );
+			assertThat( locations.departing( rides, large )).containsExactly( rides.get( 0 ), rides.get( 2 )).inOrder();
+			assertThat( locations.arriving ( rides, large )).containsExactly( rides.get( 1 ), rides.get( 3 )).inOrder();
+			assertThat( locations.departing( rides, locations.getCities( "VA" ))).hasSize( 3 );
+			assertThat( locations.departing( rides, locations.getCities( "PA" ))).isEmpty();
+
+			// rides built without the dictionary are matched by name
+			var loose  = new CarRide.Builder().from( "norfolk" ).to( "poquoson" ).rate( 20 ).build();
+			assertThat( locations.departing( List.of( loose ), large )).containsExactly( loose );
+		}
+		@Test
+		void testRateAggregator() throws InterruptedException {
+			var rates = RateAggregator.sliding( 100, 10 );
+			var parts = new RateAggregator[]{ rates.split(), rates.split() };
+			var ride  = new CarRide.Builder().from( "hampton" ).to( "norfolk" );
+			var t     = new Thread[ parts.length ];
+			for (int p = 0; p < parts.length; p++) {
+				var part = parts[ p ];
+				var odd  = p;
+				t[ p ]   = new Thread( () -> {
+					// rates 1..1000 at times 0..999, split between the threads
+					for (int i = odd; i < 1000; i += 2) {
+						part.add( new CarRide.Builder().from( "hampton" ).to( "norfolk" ).rate( i + 1 ).build(), i );
+					}
+				});
+				t[ p ].start();
+			}
+			for (var thread : t) {
+				thread.join();
+			}
+			for (var part : parts) {
+				rates.merge( part );
+			}
+			var total = rates.getTotal( "hampton", "norfolk" );
+			assertThat( total.getCount() ).isEqualTo( 1000 );
+			assertThat( total.getMin  () ).isEqualTo( 1 );
+			assertThat( total.getMax  () ).isEqualTo( 1000 );
+			assertThat( total.getMean () ).isEqualTo( 500.5 );
+			// percentiles are within 1/64 of the exact rate
+			assertThat( total.getPercentile( 50 )).isAtLeast( 492 );
+			assertThat( total.getPercentile( 50 )).isAtMost ( 508 );
+			assertThat( total.getPercentile( 99 )).isAtLeast( 975 );
+			assertThat( total.getPercentile( 99 )).isAtMost ( 1000 );
+
+			// the window holds times 900..999
+			assertThat( rates.getWindowStart() ).isEqualTo( 900 );
+			var window = rates.getWindow( "hampton", "norfolk" );
+			assertThat( window.getCount() ).isEqualTo( 100 );
+			assertThat( window.getMin  () ).isEqualTo( 901 );
+
+			// a late ride counts in the totals only
+			rates.add( ride.rate( 7 ).build(), 5 );
+			assertThat( rates.getLate() ).isEqualTo( 1 );
+			assertThat( rates.getTotal ( "hampton", "norfolk" ).getCount() ).isEqualTo( 1001 );
+			assertThat( rates.getWindow( "hampton", "norfolk" ).getCount() ).isEqualTo( 100 );
+			assertThat( rates.getWindow( "norfolk", "hampton" ).getCount() ).isEqualTo( 0 );
+
+			var tumbling = RateAggregator.tumbling( 10 );
+			tumbling.add( new CarRide.Builder().from( "hampton" ).to( "norfolk" ).rate( 3 ).build(), 8  );
+			tumbling.add( new CarRide.Builder().from( "hampton" ).to( "norfolk" ).rate( 4 ).build(), 12 );
+			assertThat( tumbling.getWindow( "hampton", "norfolk" ).getMax() ).isEqualTo( 4 );
+			assertThat( tumbling.getWindow( "hampton", "norfolk" ).getCount() ).isEqualTo( 1 );
+		}
 	}
 }
\ No newline at end of file
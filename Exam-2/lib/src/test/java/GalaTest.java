@@ -1,10 +1,23 @@
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
 
 import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import com.google.common.truth.Truth;
 
@@ -383,4 +396,612 @@ class GalaTest {
 		Truth.assertThat( t.getMessage() )
 		     .isEqualTo ( "Index -1 out of bounds for length 0" );
 	}
-}
\ No newline at end of file
+	@Test
+	void testGuestOrderSurvivesDeletes() {
+		var gala = new Gala();
+		var a    = new Guest("Stevie Nicks");
+		var b    = new Guest("Lindsey Buckingham");
+		var c    = new Guest("Mick Fleetwood");
+		var d    = new Guest("John McVie");
+
+		gala.execute( gala.new Add   ( a ));
+		gala.execute( gala.new Add   ( b ));
+		gala.execute( gala.new Add   ( c ));
+		gala.execute( gala.new Delete( b ));
+		gala.execute( gala.new Add   ( d ));
+		gala.execute( gala.new Add   ( b ));
+
+		Truth.assertThat( gala.getGuests() ).containsExactly( a, c, d, b ).inOrder();
+
+		gala.undo();
+		gala.undo();
+		gala.undo();
+
+		Truth.assertThat( gala.getGuests() ).containsExactly( a, c, b ).inOrder();
+	}
+	@Test
+	void testLargeGuestList() {
+		var gala   = new Gala();
+		var guests = new Guest[200_000];
+		for (int i = 0; i < guests.length; i++) {
+			guests[i] = new Guest( "guest " + i );
+		}
+		assertTimeout( Duration.ofSeconds( 10 ), () -> {
+			for (var g : guests) {
+				gala.execute( gala.new Add( g ));
+			}
+			for (int i = 0; i < guests.length; i += 2) {
+				gala.execute( gala.new Delete( guests[i] ));
+			}
+		});
+		var guestList = gala.getGuests();
+		Truth.assertThat( guestList ).hasSize( guests.length / 2 );
+		Truth.assertThat( guestList.get( 0 )).isEqualTo( guests[1] );
+		Truth.assertThat( gala.hasGuest( guests[0] )).isFalse();
+		Truth.assertThat( gala.hasGuest( guests[1] )).isTrue();
+	}
+	@Test
+	void testListsReadByIndexAcrossChunks() {
+		var gala   = new Gala();
+		var guests = new Guest[5_000];
+		for (int i = 0; i < guests.length; i++) {
+			guests[i] = new Guest( "guest " + i );
+			gala.execute( gala.new Add( guests[i] ));
+		}
+		// holes in every chunk, and confirmed guests between the pending ones
+		for (int i = 0; i < guests.length; i += 3) {
+			gala.execute( gala.new Delete( guests[i] ));
+		}
+		for (int i = 1; i < guests.length; i += 5) {
+			if (i % 3 != 0) {
+				gala.execute( gala.new RSVP( guests[i], true ));
+			}
+		}
+		var all     = new ArrayList<Guest>();
+		var pending = new ArrayList<Guest>();
+		var rsvp    = new ArrayList<Guest>();
+		for (int i = 0; i < guests.length; i++) {
+			if (i % 3 != 0) {
+				all.add( guests[i] );
+				(i % 5 == 1 ? rsvp : pending).add( guests[i] );
+			}
+		}
+		var lists    = Arrays.asList( gala.getGuests(), gala.getPending(), gala.getRSVP() );
+		var expected = Arrays.asList( all,              pending,           rsvp );
+		for (int l = 0; l < lists.size(); l++) {
+			var list = lists.get( l );
+			Truth.assertThat( list ).isInstanceOf( java.util.RandomAccess.class );
+			Truth.assertThat( list.size() ).isEqualTo( expected.get( l ).size() );
+			for (int i = list.size() - 1; i >= 0; i--) {
+				Truth.assertThat( list.get( i )).isSameInstanceAs( expected.get( l ).get( i ));
+			}
+			assertThrows( IndexOutOfBoundsException.class, () -> list.get( list.size() ));
+		}
+
+		// a change copies the list, leaving the gala and the other lists alone
+		var list = lists.get( 1 );
+		list.remove( 0 );
+		list.add( guests[0] );
+		Truth.assertThat( list.get( list.size() - 1 )).isSameInstanceAs( guests[0] );
+		Truth.assertThat( list.get( 0 )).isSameInstanceAs( pending.get( 1 ));
+		Truth.assertThat( gala.getPending() ).containsExactlyElementsIn( pending ).inOrder();
+		Truth.assertThat( lists.get( 0 ).get( 0 )).isSameInstanceAs( all.get( 0 ));
+	}
+	@Test
+	void testPartitionCountsAndViews() {
+		var gala = new Gala();
+		var a    = new Guest("Tina Turner");
+		var b    = new Guest("Aretha Franklin");
+		var c    = new Guest("Etta James");
+
+		var pending = gala.pendingView();
+		var rsvp    = gala.rsvpView();
+
+		gala.execute( gala.new Add ( a ));
+		gala.execute( gala.new Add ( b ));
+		gala.execute( gala.new Add ( c ));
+		gala.execute( gala.new RSVP( c, true ));
+		gala.execute( gala.new RSVP( a, true ));
+
+		Truth.assertThat( gala.pendingCount() ).isEqualTo( 1 );
+		Truth.assertThat( gala.rsvpCount()    ).isEqualTo( 2 );
+		Truth.assertThat( pending ).containsExactly(    b    );
+		Truth.assertThat( rsvp    ).containsExactly( a,    c ).inOrder();
+		Truth.assertThat( gala.getRSVP() ).containsExactly( a, c ).inOrder();
+
+		// undo RSVP(a), then Delete(c) and undo it, c keeps its RSVP
+		gala.undo();
+		gala.execute( gala.new Delete( c ));
+
+		Truth.assertThat( gala.pendingCount() ).isEqualTo( 2 );
+		Truth.assertThat( gala.rsvpCount()    ).isEqualTo( 0 );
+		Truth.assertThat( pending ).containsExactly( a, b ).inOrder();
+		Truth.assertThat( rsvp    ).isEmpty();
+
+		gala.undo();
+
+		Truth.assertThat( gala.rsvpCount() ).isEqualTo( 1 );
+		Truth.assertThat( rsvp ).containsExactly( c );
+
+		assertThrows( UnsupportedOperationException.class, pending::clear );
+	}
+	@Test
+	void testJournalReplaysGuestsAndHistory(@TempDir Path dir) throws Exception {
+		var file = dir.resolve("gala.journal");
+		var a    = new Guest("Tina Turner");
+		var b    = new Guest("Aretha Franklin");
+
+		try (var journal = GalaJournal.open( file )) {
+			var gala = journal.gala();
+			gala.execute( gala.new Add   ( a ));
+			gala.execute( gala.new Add   ( b ));
+			gala.execute( gala.new RSVP  ( a, true ));
+			gala.execute( gala.new Delete( b ));
+			gala.undo();
+			gala.undo();
+			gala.redo();
+		}
+		try (var journal = GalaJournal.open( file )) {
+			var gala = journal.gala();
+			Truth.assertThat( gala.getGuests() ).containsExactly( a, b ).inOrder();
+			Truth.assertThat( gala.getRSVP()   ).containsExactly( a );
+			Truth.assertThat( gala.undoSize()  ).isEqualTo( 3 );
+			Truth.assertThat( gala.redoSize()  ).isEqualTo( 1 );
+
+			// the replayed history keeps working, and is journaled in turn
+			gala.redo();
+			Truth.assertThat( gala.getGuests() ).containsExactly( a );
+		}
+		try (var journal = GalaJournal.open( file )) {
+			Truth.assertThat( journal.gala().getGuests() ).containsExactly( a );
+			Truth.assertThat( journal.gala().redoSize()  ).isEqualTo( 0 );
+		}
+	}
+	@Test
+	void testJournalCutsTornTail(@TempDir Path dir) throws Exception {
+		var file = dir.resolve("gala.journal");
+
+		try (var journal = GalaJournal.open( file )) {
+			var gala = journal.gala();
+			gala.execute( gala.new Add( new Guest("Etta James") ));
+			journal.sync();
+		}
+		long intact = Files.size( file );
+		try (var channel = FileChannel.open( file, StandardOpenOption.APPEND )) {
+			channel.write( ByteBuffer.wrap( new byte[] { 0, 0, 0, 40, 1, 2, 3 }));
+		}
+		try (var journal = GalaJournal.open( file )) {
+			Truth.assertThat( journal.gala().getGuests() ).containsExactly( new Guest("Etta James") );
+		}
+		Truth.assertThat( Files.size( file )).isEqualTo( intact );
+	}
+	@Test
+	void testSyncedJournalForcesEveryCommand(@TempDir Path dir) throws Exception {
+		var file  = dir.resolve("gala.journal");
+		var crash = dir.resolve("crash.journal");
+		var a     = new Guest("Tina Turner");
+		var b     = new Guest("Aretha Franklin");
+
+		// a group commit interval of a minute: only the durability mode can force the records
+		try (var journal = GalaJournal.open( file, 60_000, 0, HistoryPolicy.unbounded(), GalaJournal.Durability.SYNCED )) {
+			var gala = journal.gala();
+			assertTimeout( Duration.ofSeconds( 10 ), () -> {
+				gala.execute( gala.new Add ( a ));
+				gala.execute( gala.new Add ( b ));
+				gala.execute( gala.new RSVP( b, true ));
+				gala.undo();
+			});
+			// as if the process died now, before any sync or close
+			Files.copy( file, crash );
+		}
+		try (var journal = GalaJournal.open( crash )) {
+			var gala = journal.gala();
+			Truth.assertThat( gala.getGuests() ).containsExactly( a, b ).inOrder();
+			Truth.assertThat( gala.getRSVP()   ).isEmpty();
+			Truth.assertThat( gala.undoSize()  ).isEqualTo( 2 );
+			Truth.assertThat( gala.redoSize()  ).isEqualTo( 1 );
+		}
+	}
+	@Test
+	void testJournalThroughput(@TempDir Path dir) throws Exception {
+		var guests = new Guest[100_000];
+		for (int i = 0; i < guests.length; i++) {
+			guests[i] = new Guest("Guest " + i);
+		}
+		try (var journal = GalaJournal.open( dir.resolve("gala.journal") )) {
+			var gala = journal.gala();
+			assertTimeout( Duration.ofSeconds( 2 ), () -> {
+				for (var g : guests) {
+					gala.execute( gala.new Add( g ));
+				}
+				journal.sync();
+			});
+		}
+	}
+	@Test
+	void testJournalSnapshotsCompactSegments(@TempDir Path dir) throws Exception {
+		var file   = dir.resolve("gala.journal");
+		var guests = new Guest[1_000];
+		for (int i = 0; i < guests.length; i++) {
+			guests[i] = new Guest("Guest " + i);
+		}
+		try (var journal = GalaJournal.open( file, 1, 0 )) {
+			var gala = journal.gala();
+			for (var g : guests) {
+				gala.execute( gala.new Add( g ));
+			}
+			Truth.assertThat( journal.snapshot() ).isTrue();
+			gala.execute( gala.new RSVP( guests[0], true ));
+			gala.undo();
+			gala.undo();
+		}
+		Truth.assertThat( Files.exists( dir.resolve("gala.journal.snapshot") )).isTrue();
+		Truth.assertThat( Files.exists( dir.resolve("gala.journal.old")      )).isFalse();
+		// only the records since the last snapshot are left to replay
+		Truth.assertThat( Files.size( file )).isLessThan( 256L );
+
+		try (var journal = GalaJournal.open( file, 1, 0 )) {
+			var gala = journal.gala();
+			Truth.assertThat( gala.getGuests() ).containsExactlyElementsIn( Arrays.copyOf( guests, 999 )).inOrder();
+			Truth.assertThat( gala.getRSVP()   ).isEmpty();
+			Truth.assertThat( gala.undoSize()  ).isEqualTo( 999 );
+			Truth.assertThat( gala.redoSize()  ).isEqualTo( 2 );
+
+			gala.redo();
+			gala.redo();
+			Truth.assertThat( gala.getRSVP() ).containsExactly( guests[0] );
+		}
+	}
+	@Test
+	void testJournalFinishesInterruptedSnapshot(@TempDir Path dir) throws Exception {
+		var file = dir.resolve("gala.journal");
+		var a    = new Guest("Tina Turner");
+		var b    = new Guest("Aretha Franklin");
+
+		try (var journal = GalaJournal.open( file, 1, 0 )) {
+			var gala = journal.gala();
+			gala.execute( gala.new Add ( a ));
+			gala.execute( gala.new RSVP( a, true ));
+			journal.snapshot();
+			gala.execute( gala.new Add ( b ));
+		}
+		// as if the crash came after the segment was renamed, before the snapshot was written
+		Files.move( file, dir.resolve("gala.journal.old") );
+
+		try (var journal = GalaJournal.open( file, 1, 0 )) {
+			var gala = journal.gala();
+			Truth.assertThat( gala.getGuests() ).containsExactly( a, b ).inOrder();
+			Truth.assertThat( gala.getRSVP()   ).containsExactly( a );
+			Truth.assertThat( gala.undoSize()  ).isEqualTo( 3 );
+		}
+		Truth.assertThat( Files.exists( dir.resolve("gala.journal.old") )).isFalse();
+	}
+	@Test
+	void testJournalKeepsRecordsAppendedDuringSnapshots(@TempDir Path dir) throws Exception {
+		var file     = dir.resolve("gala.journal");
+		var expected = new Gala();
+		var guests   = new Guest[3_000];
+		var mirror   = new Guest[guests.length];
+
+		try (var journal = GalaJournal.open( file, 1, 64 )) {
+			var gala = journal.gala();
+			for (int i = 0; i < guests.length; i++) {
+				guests[i] = new Guest("Guest " + i);
+				mirror[i] = new Guest("Guest " + i);
+				gala.execute(     gala.new Add( guests[i] ));
+				expected.execute( expected.new Add( mirror[i] ));
+				// a guest first met while a snapshot is encoded keeps the flag it had then
+				gala.execute(     gala.new RSVP( guests[i], i % 3 == 0 ));
+				expected.execute( expected.new RSVP( mirror[i], i % 3 == 0 ));
+				if (i % 7 == 0) {
+					gala.execute(     gala.new Delete( guests[i / 2] ));
+					expected.execute( expected.new Delete( mirror[i / 2] ));
+				}
+				if (i % 5 == 0) {
+					gala.undo();
+					expected.undo();
+				}
+			}
+			gala.undo();
+			expected.undo();
+			journal.sync();
+		}
+
+		try (var journal = GalaJournal.open( file, 1, 0 )) {
+			var gala = journal.gala();
+			Truth.assertThat( gala.getGuests().toString() ).isEqualTo( expected.getGuests().toString() );
+			Truth.assertThat( gala.getRSVP().toString()   ).isEqualTo( expected.getRSVP().toString() );
+			Truth.assertThat( gala.undoSize()             ).isEqualTo( expected.undoSize() );
+			Truth.assertThat( gala.redoSize()             ).isEqualTo( expected.redoSize() );
+
+			while (expected.undoSize() > 0) {
+				gala.undo();
+				expected.undo();
+			}
+			Truth.assertThat( gala.getGuests() ).isEmpty();
+			Truth.assertThat( gala.redoSize()  ).isEqualTo( expected.redoSize() );
+		}
+	}
+	@Test
+	void testBatchIsOneStep() {
+		var gala = new Gala();
+		var a    = new Guest("Tina Turner");
+		var b    = new Guest("Aretha Franklin");
+		var c    = new Guest("Etta James");
+
+		gala.execute( gala.new Add( c ));
+		gala.execute( gala.new Batch()
+				.add   ( a )
+				.add   ( b )
+				.rsvp  ( a, true )
+				.delete( c ));
+
+		Truth.assertThat( gala.getGuests() ).containsExactly( a, b ).inOrder();
+		Truth.assertThat( gala.getRSVP()   ).containsExactly( a );
+		Truth.assertThat( gala.undoSize()  ).isEqualTo( 2 );
+
+		gala.undo();
+		Truth.assertThat( gala.getGuests() ).containsExactly( c );
+		Truth.assertThat( gala.rsvpCount() ).isEqualTo( 0 );
+
+		gala.redo();
+		Truth.assertThat( gala.getGuests() ).containsExactly( a, b ).inOrder();
+		Truth.assertThat( gala.getRSVP()   ).containsExactly( a );
+	}
+	@Test
+	void testBatchIsAtomic() {
+		var gala = new Gala();
+		var a    = new Guest("Tina Turner");
+		var b    = new Guest("Aretha Franklin");
+
+		gala.execute( gala.new Add( b ));
+		var batch = gala.new Batch().add( a ).rsvp( b, true ).add( b );
+		var e = assertThrows( IllegalStateException.class, () -> gala.execute( batch ));
+
+		Truth.assertThat( e.getMessage() ).isEqualTo( "guest exists already" );
+		Truth.assertThat( gala.getGuests() ).containsExactly( b );
+		Truth.assertThat( gala.rsvpCount() ).isEqualTo( 0 );
+		Truth.assertThat( gala.undoSize()  ).isEqualTo( 1 );
+	}
+	@Test
+	void testBatchIsJournaled(@TempDir Path dir) throws Exception {
+		var file = dir.resolve("gala.journal");
+		var a    = new Guest("Tina Turner");
+		var b    = new Guest("Aretha Franklin");
+
+		try (var journal = GalaJournal.open( file )) {
+			var gala = journal.gala();
+			gala.execute( gala.new Batch().add( a ).add( b ).rsvp( b, true ));
+		}
+		try (var journal = GalaJournal.open( file )) {
+			var gala = journal.gala();
+			Truth.assertThat( gala.getGuests() ).containsExactly( a, b ).inOrder();
+			Truth.assertThat( gala.getRSVP()   ).containsExactly( b );
+
+			gala.undo();
+			Truth.assertThat( gala.getGuests() ).isEmpty();
+		}
+	}
+	@Test
+	void testHistoryDepthLimit() {
+		var gala   = new Gala( new HistoryPolicy.Builder().maxDepth( 3 ).build() );
+		var guests = new Guest[5];
+		for (int i = 0; i < guests.length; i++) {
+			guests[i] = new Guest("Guest " + i);
+			gala.execute( gala.new Add( guests[i] ));
+		}
+		Truth.assertThat( gala.undoSize() ).isEqualTo( 3 );
+		Truth.assertThat( gala.evictions( HistoryPolicy.Limit.DEPTH )).isEqualTo( 2 );
+
+		gala.undo();
+		gala.undo();
+		gala.undo();
+		Truth.assertThat( gala.getGuests() ).containsExactly( guests[0], guests[1] ).inOrder();
+		Truth.assertThat( gala.redoSize()  ).isEqualTo( 3 );
+		var e = assertThrows( IndexOutOfBoundsException.class, gala::undo );
+		Truth.assertThat( e.getMessage() ).isEqualTo( "Index -1 out of bounds for length 0" );
+	}
+	@Test
+	void testHistoryByteLimit() {
+		var gala = new Gala( new HistoryPolicy.Builder().maxBytes( 1_000 ).build() );
+		for (int i = 0; i < 100; i++) {
+			gala.execute( gala.new Add( new Guest("Guest " + i) ));
+		}
+		Truth.assertThat( gala.historyBytes() ).isAtMost( 1_000 );
+		Truth.assertThat( gala.undoSize() ).isLessThan( 100 );
+		Truth.assertThat( gala.evictions( HistoryPolicy.Limit.BYTES )).isEqualTo( 100 - gala.undoSize() );
+		Truth.assertThat( gala.getGuests() ).hasSize( 100 );
+	}
+	@Test
+	void testHistoryExpiry() {
+		long[] now = { 0 };
+		var gala = new Gala( new HistoryPolicy.Builder().maxAge( Duration.ofSeconds( 10 )).build(), () -> now[0] );
+		var a    = new Guest("Tina Turner");
+		var b    = new Guest("Aretha Franklin");
+
+		gala.execute( gala.new Add( a ));
+		now[0] = Duration.ofSeconds( 6 ).toNanos();
+		gala.execute( gala.new Add( b ));
+		now[0] = Duration.ofSeconds( 12 ).toNanos();
+
+		Truth.assertThat( gala.undoSize() ).isEqualTo( 1 );
+		Truth.assertThat( gala.evictions( HistoryPolicy.Limit.AGE )).isEqualTo( 1 );
+
+		now[0] = Duration.ofSeconds( 20 ).toNanos();
+		assertThrows( IndexOutOfBoundsException.class, gala::undo );
+		Truth.assertThat( gala.getGuests() ).containsExactly( a, b ).inOrder();
+	}
+	@Test
+	void testSnapshotDoesNotExpireHistory() throws Exception {
+		long[] now = { 0 };
+		var gala = new Gala( new HistoryPolicy.Builder().maxAge( Duration.ofSeconds( 10 )).build(), () -> now[0] );
+		var a    = new Guest("Tina Turner");
+		var b    = new Guest("Aretha Franklin");
+
+		gala.execute( gala.new Add( a ));
+		gala.execute( gala.new Add( b ));
+		now[0] = Duration.ofSeconds( 20 ).toNanos();
+
+		var restored = GalaSnapshot.capture( gala, 1 ).restore( new ArrayList<>(), HistoryPolicy.unbounded() );
+		Truth.assertThat( gala.evictions( HistoryPolicy.Limit.AGE )).isEqualTo( 0 );
+		Truth.assertThat( restored.undoHistory().getSize() ).isEqualTo( 2 );
+
+		Truth.assertThat( gala.undoSize() ).isEqualTo( 0 );
+		Truth.assertThat( gala.evictions( HistoryPolicy.Limit.AGE )).isEqualTo( 2 );
+	}
+	@Test
+	void testConcurrentGala() throws Exception {
+		var gala   = new ConcurrentGala();
+		var guests = new Guest[1_000];
+		for (int i = 0; i < guests.length; i++) {
+			guests[i] = new Guest("Guest " + i);
+			gala.execute( gala.new Add( guests[i] ));
+		}
+		var threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			int first = t;
+			threads[t] = new Thread(() -> {
+				for (int round = 0; round < 25; round++) {
+					for (int i = first; i < guests.length; i += threads.length) {
+						gala.execute( gala.new RSVP( guests[i], round % 2 == 0 ));
+					}
+					var extra = new Guest("Extra " + first + " " + round);
+					gala.execute( gala.new Add   ( extra ));
+					gala.execute( gala.new Delete( extra ));
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+
+		Truth.assertThat( gala.undoSize()     ).isEqualTo( guests.length + 25 * guests.length + 25 * 2 * threads.length );
+		Truth.assertThat( gala.rsvpCount()    ).isEqualTo( guests.length );
+		Truth.assertThat( gala.pendingCount() ).isEqualTo( 0 );
+		Truth.assertThat( gala.getRSVP()      ).containsExactlyElementsIn( guests ).inOrder();
+
+		for (int i = 0; i < guests.length + 2 * threads.length; i++) {
+			gala.undo();
+		}
+		Truth.assertThat( gala.getRSVP()      ).hasSize( gala.rsvpCount() );
+		Truth.assertThat( gala.getPending()   ).hasSize( gala.pendingCount() );
+		Truth.assertThat( gala.getGuests()    ).hasSize( gala.rsvpCount() + gala.pendingCount() );
+		Truth.assertThat( gala.getGuests()    ).containsAtLeastElementsIn( guests ).inOrder();
+	}
+	@Test
+	void testChangeFeed() throws Exception {
+		var gala    = new Gala();
+		var a       = new Guest("Tina Turner");
+		var b       = new Guest("Aretha Franklin");
+		var changes = Collections.synchronizedList( new ArrayList<String>() );
+		var done    = new CountDownLatch( 1 );
+
+		gala.changes().subscribe( new Flow.Subscriber<GalaFeed.Change>() {
+			@Override public void onSubscribe( Flow.Subscription s ) { s.request( Long.MAX_VALUE ); }
+			@Override public void onNext     ( GalaFeed.Change c   ) { changes.add( c.getKind() + " " + c.getGuest().getName() ); }
+			@Override public void onError    ( Throwable t         ) { done.countDown(); }
+			@Override public void onComplete (                     ) { done.countDown(); }
+		});
+		gala.execute( gala.new Add   ( a ));
+		gala.execute( gala.new Add   ( b ));
+		gala.execute( gala.new RSVP  ( a, true ));
+		gala.execute( gala.new RSVP  ( a, true ));
+		gala.execute( gala.new Delete( b ));
+		gala.undo();
+		gala.undo();
+		gala.redo();
+		gala.changes().close();
+
+		Truth.assertThat( done.await( 5, TimeUnit.SECONDS )).isTrue();
+		Truth.assertThat( changes ).containsExactly(
+				"ADDED Tina Turner",
+				"ADDED Aretha Franklin",
+				"CONFIRMED Tina Turner",
+				"REMOVED Aretha Franklin",
+				"ADDED Aretha Franklin",
+				"PENDING Tina Turner",
+				"CONFIRMED Tina Turner" ).inOrder();
+	}
+	@Test
+	void testChangeFeedSubscriberReadsConcurrentGala() throws Exception {
+		var gala     = new ConcurrentGala();
+		var guests   = new Guest[500];
+		var received = new ArrayList<String>();
+		var missing  = new ArrayList<String>();
+		var done     = new CountDownLatch( 1 );
+		for (int i = 0; i < guests.length; i++) {
+			guests[i] = new Guest("Guest " + i);
+		}
+
+		// a full buffer of one change; every change reads the gala before asking for the next
+		gala.changes( 1 ).subscribe( new Flow.Subscriber<GalaFeed.Change>() {
+			private Flow.Subscription subscription;
+			@Override public void onSubscribe( Flow.Subscription s ) { subscription = s; s.request( 1 ); }
+			@Override public void onNext     ( GalaFeed.Change c   ) {
+				received.add( c.getKind() + " " + c.getGuest().getName() );
+				if (c.getKind() == GalaFeed.Kind.ADDED && gala.getGuests().contains( c.getGuest() ) == false) {
+					missing.add( c.getGuest().getName() );
+				}
+				gala.rsvpCount();
+				subscription.request( 1 );
+			}
+			@Override public void onError    ( Throwable t         ) { done.countDown(); }
+			@Override public void onComplete (                     ) { done.countDown(); }
+		});
+		var writer = new Thread(() -> {
+			for (var g : guests) {
+				gala.execute( gala.new Add( g ));
+			}
+			for (var g : guests) {
+				gala.execute( gala.new RSVP( g, true ));
+			}
+		});
+		writer.setDaemon( true );
+		writer.start();
+		writer.join( TimeUnit.SECONDS.toMillis( 10 ));
+		Truth.assertWithMessage( "writer waits for a subscriber waiting for it" )
+		     .that( writer.isAlive() ).isFalse();
+		gala.changes().close();
+
+		Truth.assertThat( done.await( 5, TimeUnit.SECONDS )).isTrue();
+		Truth.assertThat( missing  ).isEmpty();
+		Truth.assertThat( received ).hasSize( 2 * guests.length );
+		Truth.assertThat( received.get( 0 )).isEqualTo( "ADDED Guest 0" );
+		Truth.assertThat( received.get( guests.length )).isEqualTo( "CONFIRMED Guest 0" );
+	}
+	@Test
+	void testSearch() {
+		var gala = new Gala();
+		var a    = new Guest("Tina Turner");
+		var b    = new Guest("Aretha Franklin");
+		var c    = new Guest("Ike Turner");
+		var d    = new Guest("Etta James");
+
+		gala.execute( gala.new Add( a ));
+		gala.execute( gala.new Add( b ));
+		gala.execute( gala.new Add( c ));
+
+		Truth.assertThat( gala.findByPrefix( "tur", 10 )).containsExactly( c, a ).inOrder();
+		Truth.assertThat( gala.findByPrefix( "TINA", 10 )).containsExactly( a );
+		Truth.assertThat( gala.findByPrefix( "tur", 1  )).hasSize( 1 );
+		Truth.assertThat( gala.findSimilar ( "tunrer", 2, 10 )).containsExactly( c, a ).inOrder();
+		Truth.assertThat( gala.findSimilar ( "aretha franklyn", 1, 10 )).containsExactly( b );
+		Truth.assertThat( gala.findSimilar ( "aretha franklyn", 0, 10 )).isEmpty();
+
+		gala.execute( gala.new Delete( c ));
+		gala.execute( gala.new Add   ( d ));
+		Truth.assertThat( gala.findByPrefix( "tur", 10 )).containsExactly( a );
+		Truth.assertThat( gala.findSimilar ( "jomes", 1, 10 )).containsExactly( d );
+
+		gala.undo();
+		gala.undo();
+		Truth.assertThat( gala.findByPrefix( "tur", 10 )).containsExactly( c, a ).inOrder();
+		Truth.assertThat( gala.findSimilar ( "jomes", 1, 10 )).isEmpty();
+
+		gala.redo();
+		Truth.assertThat( gala.findByPrefix( "tur", 10 )).containsExactly( a );
+		var e = assertThrows( IllegalArgumentException.class, () -> gala.findByPrefix( "tur", 0 ));
+		Truth.assertThat( e.getMessage() ).isEqualTo( "prefix cannot be null and k must be positive" );
+	}
+}
@@ -1,9 +1,18 @@
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Modifier;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.ObjLongConsumer;
@@ -11,6 +20,7 @@ import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
 import com.google.common.truth.Truth;
@@ -351,6 +361,48 @@ class RegionTest {
 		}
 	}
 	@Nested
+	class TestColumnarState {
+		@Test
+		void testColumnarMatchesObjectState() {
+			var names    = new NameDictionary();
+			var columnar = State.columnar( STATE_1, names );
+			var objects  = new State     ( STATE_1 );
+			var a        = new SmallCity ( CITY_1,  42_000 );
+			var b        = new LargeCity ( CITY_2, 420_000 );
+			var c        = new SmallCity ( CITY_1,       7 );
+			columnar.addCities( a, b, c );
+			objects .addCities( a, b, c );
+
+			Truth.assertThat( columnar.getCities() ).containsExactlyElementsIn( objects.getCities() ).inOrder();
+			Truth.assertThat( columnar.getCities().get( 0 )).isNotSameInstanceAs( a );
+			Truth.assertThat( columnar.getCitiesInRange( 0, 50_000 )).containsExactly( a, c ).inOrder();
+			Truth.assertThat( columnar.getTotalPopulation() ).isEqualTo( objects.getTotalPopulation() );
+			// repeated names are stored once
+			Truth.assertThat( names.size() ).isEqualTo( 2 );
+
+			var v = Mockito.mock( IRegionVisitor.class );
+			columnar.accept( v );
+			Mockito.verify( v ).visit( columnar );
+			Mockito.verify( v ).visit( a );
+			Mockito.verify( v ).visit( b );
+			Mockito.verify( v ).visit( c );
+		}
+		@Test
+		void testColumnarRejectsOtherCities() {
+			var s = State.columnar( STATE_2 );
+			var t = assertThrows(
+					IllegalArgumentException.class,
+					() -> s.addCities( new City( CITY_3, 42 ) {
+						@Override
+						public void accept(IRegionVisitor visitor) {
+							throw new IllegalAccessError( ERROR_NO_CALL );
+						}
+					}));
+			Truth.assertThat( t.getMessage() ).isEqualTo( "Columnar states only hold small and large cities" );
+			Truth.assertThat( s.getCityCount() ).isEqualTo( 0 );
+		}
+	}
+	@Nested
 	class TestMap {
 		@Test
 		void testAddNullRegionThrowsException() {
@@ -391,6 +443,275 @@ class RegionTest {
 		}
 	}
 	@Nested
+	class TestMapPopulationIndex {
+		@Test
+		void testMatchesVisitor() {
+			var m = new Map();
+			var s = new State    ( STATE_1 );
+			var z = new State    ( STATE_2 );
+			var a = new SmallCity( CITY_1,  42_000 );
+			var b = new SmallCity( CITY_2, 142_000 );
+			var c = new LargeCity( CITY_3, 420_000 );
+			var d = new SmallCity( CITY_4,   4_200 );
+			var e = new City     ( CITY_5, 142_000 ) {
+				@Override
+				public void accept(IRegionVisitor visitor) {
+					visitor.visit( this );
+				}
+			};
+			s.addCities ( c );
+			m.addRegions( b, s, e );
+			m.addRegions( z );
+			// cities added after their state joined the map are indexed too
+			s.addCities ( a );
+			z.addCities ( d );
+
+			for (int[] range : new int[][]{ {0, 500_000}, {100_000, 500_000}, {42_000, 42_000}, {45_000, 50_000} }) {
+				var v = new PopulationRangeVisitor( range[0], range[1] );
+				m.traverse( v );
+				Truth.assertThat( m.getCitiesInRange( range[0], range[1] ))
+				     .containsExactlyElementsIn( v.getCities() ).inOrder();
+			}
+			Truth.assertThat( m.getCitiesInRange( 0, 500_000 )).containsExactly( b, c, a, d ).inOrder();
+		}
+		@Test
+		void testColumnarStatesBuildTheCitiesFound() {
+			var m = new Map();
+			var s = State.columnar( STATE_1 );
+			var z = new State     ( STATE_2 );
+			var a = new SmallCity ( CITY_1,  42_000 );
+			var b = new SmallCity ( CITY_2, 142_000 );
+			var c = new LargeCity ( CITY_3, 420_000 );
+			var d = new SmallCity ( CITY_4,   4_200 );
+			s.addCities ( a, c );
+			m.addRegions( b, s, z );
+			z.addCities ( d );
+			s.addCities ( new SmallCity( CITY_5, 99_000 ));
+
+			var v = new PopulationRangeVisitor( 0, 200_000 );
+			m.traverse( v );
+			var found = m.getCitiesInRange( 0, 200_000 );
+			Truth.assertThat( found ).containsExactlyElementsIn( v.getCities() ).inOrder();
+			Truth.assertThat( found ).containsExactly( b, a, new SmallCity( CITY_5, 99_000 ), d ).inOrder();
+			// cities of an object state come back as added, those of a columnar one are built per query
+			Truth.assertThat( found.get( 0 )).isSameInstanceAs( b );
+			Truth.assertThat( found.get( 3 )).isSameInstanceAs( d );
+			Truth.assertThat( found.get( 1 )).isNotSameInstanceAs( a );
+			Truth.assertThat( m.getCitiesInRange( 0, 200_000 ).get( 1 )).isNotSameInstanceAs( found.get( 1 ));
+			Truth.assertThat( m.getCitiesInRange( 400_000, 500_000 )).containsExactly( c );
+		}
+		@Test
+		void testInterleavedAddsAndConcurrentQueries() throws InterruptedException {
+			var m = new Map();
+			var p = 0;
+			for (int i = 0; i < 3_000; i++) {
+				var s = new State( STATE_1 + i );
+				m.addRegions( s );
+				for (int j = 0; j < i % 5; j++) {
+					p = (p + 7_919) % 400_000;
+					s.addCities( p > SMALL_UPPER ? new LargeCity( CITY_3, p ) : new SmallCity( CITY_1, p ));
+				}
+				if (i % 97 == 0) {
+					var v = new PopulationRangeVisitor( 10_000, 200_000 );
+					m.traverse( v );
+					Truth.assertThat( m.getCitiesInRange( 10_000, 200_000 )).containsExactlyElementsIn( v.getCities() ).inOrder();
+				}
+			}
+			// queries leave the index alone, so readers may share it
+			var v = new PopulationRangeVisitor( 50_000, 300_000 );
+			m.traverse( v );
+			var expected = v.getCities();
+			var failures = new ArrayList<Throwable>();
+			var threads  = new ArrayList<Thread>();
+			for (int t = 0; t < 4; t++) {
+				var thread = new Thread( () -> {
+					for (int i = 0; i < 50; i++) {
+						if (m.getCitiesInRange( 50_000, 300_000 ).equals( expected ) == false) {
+							synchronized (failures) {
+								failures.add( new AssertionError( "range differs from the visitor" ));
+							}
+						}
+					}
+				});
+				threads.add( thread );
+				thread.start();
+			}
+			for (var thread : threads) {
+				thread.join();
+			}
+			Truth.assertThat( failures ).isEmpty();
+		}
+		@Test
+		void testNegativeOrIncorrectRangeThrowsException() {
+			var m = new Map();
+			var t = assertThrows( 
+					IllegalArgumentException.class,
+					() -> m.getCitiesInRange( -1, 42 ));
+			Truth.assertThat( t.getMessage() ).isEqualTo ( "Range must have positive values" );
+
+			t = assertThrows( 
+					IllegalArgumentException.class,
+					() -> m.getCitiesInRange( 42, 41 ));
+			Truth.assertThat( t.getMessage() ).isEqualTo ( "Range must be incremental" );
+		}
+	}
+	@Nested
+	class TestParallelTraversal {
+		@Test
+		void testMatchesSequentialTraversal() {
+			var m = new Map();
+			var p = 0;
+			for (int i = 0; i < 2_000; i++) {
+				var s = new State( STATE_1 + i );
+				// every 500th state is large enough to be split over its cities
+				var n = i % 500 == 0 ? 10_000 : i % 7;
+				for (int j = 0; j < n; j++) {
+					p = (p + 7_919) % 400_000;
+					s.addCities( p > SMALL_UPPER ? new LargeCity( CITY_3, p ) : new SmallCity( CITY_1, p ));
+				}
+				m.addRegions( s, new SmallCity( CITY_2, i ));
+			}
+			var pool = new ForkJoinPool( 4 );
+
+			var count    = new CountRegionVisitor();
+			var parallel = new CountRegionVisitor();
+			m.traverse        ( count );
+			m.traverseParallel( parallel, pool );
+			Truth.assertThat( parallel.getStates() ).isEqualTo( count.getStates() );
+			Truth.assertThat( parallel.getCities() ).isEqualTo( count.getCities() );
+
+			var range         = new PopulationRangeVisitor( 1_000, 300_000 );
+			var parallelRange = new PopulationRangeVisitor( 1_000, 300_000 );
+			m.traverse        ( range );
+			m.traverseParallel( parallelRange, pool );
+			Truth.assertThat( parallelRange.getCities() ).containsExactlyElementsIn( range.getCities() ).inOrder();
+		}
+	}
+	@Nested
+	class TestMapSnapshot {
+		@TempDir
+		Path dir;
+
+		@Test
+		void testSnapshotMatchesMap() throws IOException {
+			var m = new Map();
+			var s = new State    ( STATE_1 );
+			var z = new State    ( STATE_2 );
+			var a = new SmallCity( CITY_1,  42_000 );
+			var b = new SmallCity( CITY_2, 142_000 );
+			var c = new LargeCity( CITY_3, 420_000 );
+			var d = new SmallCity( CITY_1,   4_200 );
+			s.addCities ( a, c );
+			z.addCities ( d );
+			m.addRegions( b, s, z );
+
+			var file = dir.resolve( "map.snapshot" );
+			MapSnapshot.write( m, file );
+			var snapshot = MapSnapshot.open( file );
+
+			Truth.assertThat( snapshot.regionCount() ).isEqualTo( 3 );
+			Truth.assertThat( snapshot.recordCount() ).isEqualTo( 6 );
+			Truth.assertThat( snapshot.count().getStates()   ).isEqualTo( 2 );
+			Truth.assertThat( snapshot.count().getCities()   ).isEqualTo( 4 );
+			Truth.assertThat( snapshot.getTotalPopulation()  ).isEqualTo( m.getTotalPopulation() );
+			Truth.assertThat( snapshot.getCitiesInRange( 0, 200_000 )).containsExactly( b, a, d ).inOrder();
+
+			var v = new PopulationRangeVisitor( 100_000, 500_000 );
+			snapshot.traverse( v );
+			Truth.assertThat( v.getCities() ).containsExactly( b, c ).inOrder();
+
+			var names = new ArrayList<String>();
+			snapshot.traverse( new ISnapshotVisitor() {
+				@Override
+				public void visitState(MapSnapshot snapshot, int record) {
+					names.add( snapshot.name( record ) + ":" + snapshot.cityCount( record ));
+				}
+			});
+			Truth.assertThat( names ).containsExactly( STATE_1 + ":2", STATE_2 + ":1" ).inOrder();
+		}
+		@Test
+		void testNotASnapshotThrowsException() throws IOException {
+			var file = dir.resolve( "other" );
+			Files.write( file, new byte[64] );
+			var t = assertThrows(
+					IOException.class,
+					() -> MapSnapshot.open( file ));
+			Truth.assertThat( t.getMessage() ).isEqualTo( "Not a map snapshot" );
+		}
+	}
+	@Nested
+	class TestRegionCsvLoader {
+		@Test
+		void testLoadsValidRowsAndCountsRejected() throws IOException {
+			var csv = String.join( "\n",
+					"state,city,kind,population",
+					"VA,Richmond,small,230000",
+					"VA,Virginia Beach,large,450000\r",
+					",Orlando,large,300000",
+					",Tampa,small,300000",     // out of range for a small city
+					"PA,   ,small,5",          // blank name
+					"PA,Erie,small,-5",        // negative population
+					"PA,Erie,medium,5",        // unknown kind
+					"PA,Erie,small,lots",      // not a number
+					"not a row",
+					"",
+					"NY,Albany,small,99000" );
+			var m      = new Map();
+			var in     = Channels.newChannel( new ByteArrayInputStream( csv.getBytes( StandardCharsets.UTF_8 )));
+			var report = new RegionCsvLoader( m ).load( in );
+
+			Truth.assertThat( report.getRows()     ).isEqualTo( 10L );
+			Truth.assertThat( report.getAccepted() ).isEqualTo(  4L );
+			Truth.assertThat( report.getRejected() ).isEqualTo(  6L );
+
+			Truth.assertThat( m.getStateCount() ).isEqualTo( 2 );
+			Truth.assertThat( m.getCityCount()  ).isEqualTo( 4 );
+
+			var v = new PopulationRangeVisitor( 0, LARGE_UPPER );
+			m.traverse( v );
+			Truth.assertThat( v.getCities() ).containsExactly(
+					new SmallCity( "Richmond",       230_000 ),
+					new LargeCity( "Virginia Beach", 450_000 ),
+					new LargeCity( "Orlando",        300_000 ),
+					new SmallCity( "Albany",          99_000 )).inOrder();
+		}
+	}
+	@Nested
+	class TestAllocationFreeTraversal {
+		@Test
+		void testTraversalAllocatesNothingPerNode() {
+			var m     = new Map();
+			var nodes = 0L;
+			for (int i = 0; i < 1_000; i++) {
+				var s = new State( STATE_1 + i );
+				for (int j = 0; j < 100; j++) {
+					s.addCities( j % 2 == 0 ? new SmallCity( CITY_1, j ) : new LargeCity( CITY_2, LARGE_LOWER + j ));
+				}
+				m.addRegions( s );
+				nodes += 101;
+			}
+			var mx     = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			var thread = Thread.currentThread().getId();
+			long count = 0;
+			long range = 0;
+			// the first rounds pay for class loading and compilation
+			for (int round = 0; round < 5; round++) {
+				var v = new CountRegionVisitor();
+				var p = new PopulationRangeVisitor( 2, 2 );
+				long start = mx.getThreadAllocatedBytes( thread );
+				m.traverse( v );
+				long middle = mx.getThreadAllocatedBytes( thread );
+				m.traverse( p );
+				count = middle - start;
+				range = mx.getThreadAllocatedBytes( thread ) - middle;
+				Truth.assertThat( v.getCities() ).isEqualTo( 100_000 );
+				Truth.assertThat( p.getCityCount() ).isEqualTo( 1_000 );
+			}
+			Truth.assertThat( count ).isLessThan( nodes );
+			Truth.assertThat( range ).isLessThan( nodes );
+		}
+	}
+	@Nested
 	class TestCountRegionVisitor {
 		@Test
 		void testNoRegions() {
@@ -484,6 +805,58 @@ class RegionTest {
 		}
 	}
 	@Nested
+	class TestRegionStatistics {
+		@Test
+		void testMapCountsMatchVisitor() {
+			var v = new CountRegionVisitor();
+			var m = new Map();
+			var s = new State    ( STATE_1 );
+			var z = new State    ( STATE_2 );
+			var a = new SmallCity( CITY_1,  42_000 );
+			var b = new SmallCity( CITY_2, 142_000 );
+			var c = new LargeCity( CITY_3, 420_000 );
+			var d = new SmallCity( CITY_4,   4_200 );
+			var e = new City     ( CITY_5,  77_000 ) {
+				@Override
+				public void accept(IRegionVisitor visitor) {
+					visitor.visit( this );
+				}
+			};
+			s.addCities ( a );
+			m.addRegions( b, s, e );
+			m.addRegions( z );
+			s.addCities ( c );
+			z.addCities ( d );
+			m.traverse( v );
+
+			var count = m.count();
+			Truth.assertThat( count.getStates() ).isEqualTo( v.getStates() );
+			Truth.assertThat( count.getCities() ).isEqualTo( v.getCities() );
+
+			Truth.assertThat( m.getStateCount()      ).isEqualTo( 2 );
+			Truth.assertThat( m.getCityCount()       ).isEqualTo( 4 );
+			Truth.assertThat( m.getSmallCityCount()  ).isEqualTo( 3 );
+			Truth.assertThat( m.getLargeCityCount()  ).isEqualTo( 1 );
+			Truth.assertThat( m.getTotalPopulation() ).isEqualTo( 608_200L );
+		}
+		@Test
+		void testStateAggregates() {
+			var s = new State( STATE_3 );
+
+			Truth.assertThat( s.getCityCount()       ).isEqualTo( 0 );
+			Truth.assertThat( s.getTotalPopulation() ).isEqualTo( 0L );
+			Truth.assertThat( s.getMinPopulation()   ).isEqualTo( 0 );
+			Truth.assertThat( s.getMaxPopulation()   ).isEqualTo( 0 );
+
+			s.addCities( new SmallCity( CITY_1, 42_000 ), new LargeCity( CITY_2, LARGE_UPPER ), new SmallCity( CITY_3, 7 ));
+
+			Truth.assertThat( s.getCityCount()       ).isEqualTo( 3 );
+			Truth.assertThat( s.getTotalPopulation() ).isEqualTo( 42_007L + LARGE_UPPER );
+			Truth.assertThat( s.getMinPopulation()   ).isEqualTo( 7 );
+			Truth.assertThat( s.getMaxPopulation()   ).isEqualTo( LARGE_UPPER );
+		}
+	}
+	@Nested
 	class TestPopulationRangeVisitor {
 		@Test
 		void testNegativeOrIncorrectRangeThrowsException() {
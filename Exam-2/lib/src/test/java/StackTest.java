@@ -0,0 +1,233 @@
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.truth.Truth;
+
+class StackTest {
+
+	private static void testPushPopOrder(IStack<String> s) {
+		Truth.assertThat( s.push( "a" )).isTrue();
+		Truth.assertThat( s.push( "b" )).isTrue();
+		Truth.assertThat( s.push( "c" )).isTrue();
+		Truth.assertThat( s.getSize() ).isEqualTo( 3 );
+		Truth.assertThat( s.peek()    ).isEqualTo( "c" );
+
+		Truth.assertThat( s.pop() ).isEqualTo( "c" );
+		Truth.assertThat( s.pop() ).isEqualTo( "b" );
+		s.push( "d" );
+		Truth.assertThat( s.pop() ).isEqualTo( "d" );
+		Truth.assertThat( s.pop() ).isEqualTo( "a" );
+		Truth.assertThat( s.isEmpty() ).isTrue();
+	}
+	private static void testEmpty(IStack<String> s) {
+		Truth.assertThat( s.isEmpty() ).isTrue();
+		Truth.assertThat( s.getSize() ).isEqualTo( 0 );
+
+		var e = assertThrows( IndexOutOfBoundsException.class, s::pop );
+		Truth.assertThat( e.getMessage() ).isEqualTo( "Index -1 out of bounds for length 0" );
+		e     = assertThrows( IndexOutOfBoundsException.class, s::peek );
+		Truth.assertThat( e.getMessage() ).isEqualTo( "Index -1 out of bounds for length 0" );
+		assertThrows( IndexOutOfBoundsException.class, () -> s.get( 0 ));
+
+		s.push( "a" );
+		s.pop();
+		Truth.assertThat( s.isEmpty() ).isTrue();
+		assertThrows( IndexOutOfBoundsException.class, s::pop );
+	}
+	private static void testGet(IStack<String> s) {
+		s.push( "a" );
+		s.push( "b" );
+		s.push( "c" );
+		Truth.assertThat( s.get( 0 )).isEqualTo( "a" );
+		Truth.assertThat( s.get( 1 )).isEqualTo( "b" );
+		Truth.assertThat( s.get( 2 )).isEqualTo( "c" );
+		assertThrows( IndexOutOfBoundsException.class, () -> s.get( -1 ));
+		assertThrows( IndexOutOfBoundsException.class, () -> s.get(  3 ));
+		Truth.assertThat( s.getSize() ).isEqualTo( 3 );
+	}
+	private static void testClear(IStack<String> s) {
+		s.push( "a" );
+		s.push( "b" );
+		s.clear();
+		Truth.assertThat( s.isEmpty() ).isTrue();
+		Truth.assertThat( s.getSize() ).isEqualTo( 0 );
+		s.push( "c" );
+		Truth.assertThat( s.getSize() ).isEqualTo( 1 );
+		Truth.assertThat( s.peek()    ).isEqualTo( "c" );
+	}
+	private static void testToString(IStack<String> s, String name) {
+		Truth.assertThat( s.toString() ).isEqualTo( name + "[]" );
+		s.push( "a" );
+		s.push( "b" );
+		Truth.assertThat( s.toString() ).isEqualTo( name + "[a, b]" );
+	}
+	private static void testRedo(Supplier<IStack<Command>> redo) {
+		var gala = new Gala( HistoryPolicy.unbounded(), redo.get() );
+		var a    = new Guest("Tina Turner");
+		var b    = new Guest("Aretha Franklin");
+
+		gala.execute( gala.new Add( a ));
+		gala.execute( gala.new Add( b ));
+		gala.undo();
+		gala.undo();
+		Truth.assertThat( gala.redoSize()  ).isEqualTo( 2 );
+		Truth.assertThat( gala.getGuests() ).isEmpty();
+
+		gala.redo();
+		Truth.assertThat( gala.getGuests() ).containsExactly( a );
+		gala.redo();
+		Truth.assertThat( gala.getGuests() ).containsExactly( a, b ).inOrder();
+		assertThrows( IndexOutOfBoundsException.class, gala::redo );
+	}
+
+	@Nested
+	class TestStack {
+		@Test
+		void testPushPopOrder() {
+			StackTest.testPushPopOrder( new Stack<>() );
+		}
+		@Test
+		void testEmpty() {
+			StackTest.testEmpty( new Stack<>() );
+		}
+		@Test
+		void testGet() {
+			StackTest.testGet( new Stack<>() );
+		}
+		@Test
+		void testClear() {
+			StackTest.testClear( new Stack<>() );
+		}
+		@Test
+		void testToString() {
+			StackTest.testToString( new Stack<>(), "Stack" );
+		}
+		@Test
+		void testGalaRedo() {
+			StackTest.testRedo( Stack::new );
+		}
+	}
+
+	@Nested
+	class TestConcurrentStack {
+		@Test
+		void testPushPopOrder() {
+			StackTest.testPushPopOrder( new ConcurrentStack<>() );
+		}
+		@Test
+		void testEmpty() {
+			StackTest.testEmpty( new ConcurrentStack<>() );
+		}
+		@Test
+		void testGet() {
+			StackTest.testGet( new ConcurrentStack<>() );
+		}
+		@Test
+		void testClear() {
+			StackTest.testClear( new ConcurrentStack<>() );
+		}
+		@Test
+		void testToString() {
+			StackTest.testToString( new ConcurrentStack<>(), "ConcurrentStack" );
+		}
+		@Test
+		void testGalaRedo() {
+			StackTest.testRedo( ConcurrentStack::new );
+		}
+		@Test
+		void testConcurrentPush() throws Exception {
+			var stack   = new ConcurrentStack<Integer>();
+			var threads = new Thread[4];
+			var start   = new CountDownLatch( 1 );
+			int each    = 20_000;
+			for (int t = 0; t < threads.length; t++) {
+				int first = t * each;
+				threads[t] = new Thread(() -> {
+					awaitQuietly( start );
+					for (int i = 0; i < each; i++) {
+						stack.push( first + i );
+					}
+				});
+				threads[t].start();
+			}
+			start.countDown();
+			for (var t : threads) {
+				t.join();
+			}
+			Truth.assertThat( stack.getSize() ).isEqualTo( threads.length * each );
+
+			// every thread's values come out in the reverse order it pushed them
+			var last = new int[threads.length];
+			Arrays.fill( last, Integer.MAX_VALUE );
+			var seen = new boolean[threads.length * each];
+			while (stack.isEmpty() == false) {
+				int v = stack.pop();
+				Truth.assertThat( seen[v] ).isFalse();
+				Truth.assertThat( v ).isLessThan( last[v / each] );
+				seen[v] = true;
+				last[v / each] = v;
+			}
+			for (boolean s : seen) {
+				Truth.assertThat( s ).isTrue();
+			}
+		}
+		@Test
+		void testConcurrentPushPop() throws Exception {
+			var stack   = new ConcurrentStack<Integer>();
+			var threads = new Thread[4];
+			var popped  = new ArrayList<List<Integer>>();
+			var start   = new CountDownLatch( 1 );
+			int each    = 20_000;
+			for (int t = 0; t < threads.length; t++) {
+				int first = t * each;
+				var mine  = new ArrayList<Integer>();
+				popped.add( mine );
+				threads[t] = new Thread(() -> {
+					awaitQuietly( start );
+					for (int i = 0; i < each; i++) {
+						stack.push( first + i );
+						if (i % 2 == 1) {
+							mine.add( stack.pop() );
+							mine.add( stack.pop() );
+						}
+					}
+				});
+				threads[t].start();
+			}
+			start.countDown();
+			for (var t : threads) {
+				t.join();
+			}
+			Truth.assertThat( stack.isEmpty() ).isTrue();
+
+			// every value pushed was popped exactly once
+			var all = new ArrayList<Integer>();
+			for (var p : popped) {
+				all.addAll( p );
+			}
+			Collections.sort( all );
+			Truth.assertThat( all.size() ).isEqualTo( threads.length * each );
+			for (int i = 0; i < all.size(); i++) {
+				Truth.assertThat( all.get( i )).isEqualTo( i );
+			}
+		}
+
+		private static void awaitQuietly(CountDownLatch latch) {
+			try {
+				latch.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}